@@ -0,0 +1,74 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Application file that checks that moving the bodies for a frame does not allocate anything once the simulation runs,
+ *  so the garbage collector never has to pause the drawing. It runs the same per-frame work as the frame callback of
+ *  SolarSystemCourseWork2 in scripted mode (the scheduler, placing every body and spinning it), without drawing
+ *  anything, and counts the bytes this thread allocated while doing so.
+ * Only the simulation half of the frame is checked. The other half, BodyView.update writing the poses into the scene
+ *  graph with StdDraw3D's setPosition and setPose, is not run, as Java 3D cannot create its nodes without a display,
+ *  so whether that half allocates is not verified here.
+ * It takes the following (optional) arguments, in this order:
+ *  - The amount of frames to measure. Defaults to 100000.
+ *  - The amount of simulated milliseconds per frame. Defaults to one minute.
+ * It prints the bytes allocated per frame and exits with status 1 if that is not 0.
+ */
+public class AllocationTest {
+    // The amount of runs of as many frames as are measured that are run before measuring, so the JIT has compiled the
+    //  code and nothing is loaded lazily anymore. The first long run still allocates a few hundred bytes once, while
+    //  its loop gets compiled, so a run of the same length is measured only after those.
+    private static final int WARM_UP_RUNS = 3;
+
+    public static void main(String[] args) {
+        int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        double frameMillis = (args.length > 1) ? Double.parseDouble(args[1]) : 60000.0;
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new IllegalStateException("This Java runtime cannot count the bytes allocated by a thread!");
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        BodyStore store = new BodyStore();
+        SolarSystemCourseWork2.createSolarSystem(store, null);
+        SimulationScheduler scheduler = new SimulationScheduler(SolarSystemCourseWork2.timeShiftMilliseconds, 1000);
+
+        double simTimeMillis = 0;
+        for (int run = 0; run < WARM_UP_RUNS; run++) {
+            simTimeMillis = runFrames(store, scheduler, simTimeMillis, frames, frameMillis);
+        }
+
+        // Measure an empty run first, as asking for the allocated bytes may allocate itself.
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        runFrames(store, scheduler, simTimeMillis, frames, frameMillis);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        System.out.println("Bodies: " + store.size() + ", frames: " + frames);
+        System.out.println("Bytes allocated per frame: " + ((double) allocated / frames) + " (" + allocated + " in total)");
+        if (allocated > 0) {
+            System.out.println("FAILED: a steady state frame update should not allocate anything.");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Helper method that runs the per-frame work for the given amount of frames, starting at the given simulated time.
+     *  The scene graph is not written to, see the class comment.
+     * @return double the simulated time after the last frame.
+     */
+    private static double runFrames(BodyStore store, SimulationScheduler scheduler, double simTimeMillis, int frames, double frameMillis) {
+        for (int frame = 0; frame < frames; frame++) {
+            scheduler.advance();
+            simTimeMillis += frameMillis;
+            store.update(simTimeMillis);
+            store.updateSpins(simTimeMillis);
+        }
+        return simTimeMillis;
+    }
+}
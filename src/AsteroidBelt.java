@@ -0,0 +1,277 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that places a large population of small bodies (like the asteroid belt) on their Kepler orbits around a single
+ *  central body, for hundreds of thousands of bodies per frame. The bodies have no mass, name or shape of their own, so
+ *  they are kept in flat arrays of primitives like in the KeplerPropagator, and their positions are written straight
+ *  into one array of floats that is drawn as a single cloud of points by the AsteroidBeltView.
+ * Between two frames a body only moves a tiny bit along its orbit. So instead of solving Kepler's equation from scratch,
+ *  the eccentric anomaly is moved on from where it was in the last update, with a Newton-Raphson step or two on the
+ *  change in eccentric anomaly. The sine and cosine of that small change are found with a short series and added to the
+ *  ones of the last update, so updating a body needs no trigonometry at all. Only when a body has moved too far since
+ *  the last update (the time was jumped or sped up a lot), it is solved from scratch with the KeplerPropagator.
+ * The values are stored in the following formats:
+ *  - the orbital elements in AU & degrees, like in the KeplerPropagator. Time in days.
+ *  - the positions in units, relative to the central body, which can be moved with setCentre.
+ */
+public class AsteroidBelt {
+    private static final int DEFAULT_CAPACITY = 1024;
+    // The most the mean anomaly may have changed since the last update (times 1 - the eccentricity) to move a body on
+    //  from there. This keeps the change in eccentric anomaly below 0.1, where the series below are exact to 1e-12.
+    private static final double MAX_INCREMENT = 0.1;
+    private static final double INCREMENT_TOLERANCE = 1e-12;
+    private static final int INCREMENT_ITERATIONS = 4;
+    // Bodies are split up over the cores in chunks of this size, and only when there are enough of them.
+    private static final int PARALLEL_THRESHOLD = 16384;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final double unitsPerAU;
+    private final KeplerPropagator solver = new KeplerPropagator();
+
+    private int size = 0;
+
+    // The orbital elements that are still needed every update.
+    private double[] eccentricity, meanAnomalyJ2000, meanMotion;
+    // The rotation from the plane of the orbit to the ecliptic, scaled by the size of the orbit like in KeplerPropagator.
+    private double[] px, py, pz, qx, qy, qz;
+
+    // Where every body was along its orbit in the last update, and the moment of that update (NaN before the first).
+    private double[] cosEccentricAnomaly, sinEccentricAnomaly;
+    private double lastDaysSinceJ2000 = Double.NaN;
+
+    // The positions of all the bodies, x, y & z after each other, for drawing.
+    private float[] coordinates;
+    private double centreX = 0, centreY = 0, centreZ = 0;
+
+    /**
+     * Method that creates an empty belt.
+     * @param unitsPerAU double is how many units of distance one AU is drawn as.
+     */
+    public AsteroidBelt(double unitsPerAU) {
+        if (!(unitsPerAU > 0)) throw new IllegalArgumentException("The amount of units per AU must be positive!");
+        this.unitsPerAU = unitsPerAU;
+
+        eccentricity = new double[DEFAULT_CAPACITY];
+        meanAnomalyJ2000 = new double[DEFAULT_CAPACITY];
+        meanMotion = new double[DEFAULT_CAPACITY];
+        px = new double[DEFAULT_CAPACITY];
+        py = new double[DEFAULT_CAPACITY];
+        pz = new double[DEFAULT_CAPACITY];
+        qx = new double[DEFAULT_CAPACITY];
+        qy = new double[DEFAULT_CAPACITY];
+        qz = new double[DEFAULT_CAPACITY];
+        cosEccentricAnomaly = new double[DEFAULT_CAPACITY];
+        sinEccentricAnomaly = new double[DEFAULT_CAPACITY];
+        coordinates = new float[DEFAULT_CAPACITY * 3];
+    }
+
+    /**
+     * Method that creates a belt of randomly spread out bodies on low eccentricity and low inclination orbits around
+     *  the Sun, like the main asteroid belt between Mars and Jupiter.
+     * @param count int is the amount of bodies in the belt.
+     * @param seed long is the seed of the random spread, so the same seed always gives the same belt.
+     * @param unitsPerAU double is how many units of distance one AU is drawn as.
+     * @param drawScale double is how much bigger the orbits are drawn than they really are. The mean motion still follows
+     *  from the real size, just like the planets that are drawn closer to the Sun than they are.
+     * @return AsteroidBelt the created belt.
+     */
+    public static AsteroidBelt createMainBelt(int count, long seed, double unitsPerAU, double drawScale) {
+        AsteroidBelt belt = new AsteroidBelt(unitsPerAU);
+        belt.ensureCapacity(count);
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            double semimajorAxis = 2.2 + 1.0 * random.nextDouble();
+            double eccentricity = 0.1 * random.nextDouble();
+            // Most asteroids are close to the ecliptic, a few are tilted up to about 20 degrees.
+            double inclination = 20.0 * random.nextDouble() * random.nextDouble();
+            belt.add(semimajorAxis * drawScale, eccentricity, inclination, 360.0 * random.nextDouble(), 360.0 * random.nextDouble(),
+                    360.0 * random.nextDouble(), KeplerPropagator.heliocentricMeanMotion(semimajorAxis));
+        }
+        return belt;
+    }
+
+    /**
+     * Method that adds a body to the belt, with the given orbital elements.
+     * @param semimajorAxis double is half the longest diameter of the orbit in AU.
+     * @param eccentricity double is how stretched the orbit is, from 0 (a circle) up to but not including 1.
+     * @param inclination double is the angle of the orbit with the ecliptic in degrees.
+     * @param eclipticLongtitude double is the longitude of the ascending node in degrees.
+     * @param omegaPerihelion double is the angle from the ascending node to the perihelion in degrees.
+     * @param meanAnomalyJ2000 double is the mean anomaly of the body at J2000 in degrees.
+     * @param degreesPerDay double is the mean motion of the body in degrees per day.
+     * @return int the index of the new body.
+     */
+    public int add(double semimajorAxis, double eccentricity, double inclination, double eclipticLongtitude, double omegaPerihelion, double meanAnomalyJ2000, double degreesPerDay) {
+        if (!(eccentricity >= 0) || eccentricity >= 1) {
+            throw new IllegalArgumentException("Only elliptical orbits (0 <= eccentricity < 1) are supported!");
+        }
+        if (size == this.eccentricity.length) {
+            ensureCapacity(size * 2);
+        }
+        int index = size++;
+        this.eccentricity[index] = eccentricity;
+        this.meanAnomalyJ2000[index] = Math.toRadians(meanAnomalyJ2000);
+        this.meanMotion[index] = Math.toRadians(degreesPerDay);
+        // Place the new body from scratch in the next update, as it has no last position yet.
+        lastDaysSinceJ2000 = Double.NaN;
+
+        double cosNode = Math.cos(Math.toRadians(eclipticLongtitude));
+        double sinNode = Math.sin(Math.toRadians(eclipticLongtitude));
+        double cosPeri = Math.cos(Math.toRadians(omegaPerihelion));
+        double sinPeri = Math.sin(Math.toRadians(omegaPerihelion));
+        double cosIncl = Math.cos(Math.toRadians(inclination));
+        double sinIncl = Math.sin(Math.toRadians(inclination));
+        double a = semimajorAxis * unitsPerAU;
+        double b = a * Math.sqrt(1.0 - (eccentricity * eccentricity));
+
+        px[index] = a * (cosNode * cosPeri - sinNode * sinPeri * cosIncl);
+        py[index] = a * (sinNode * cosPeri + cosNode * sinPeri * cosIncl);
+        pz[index] = a * (sinPeri * sinIncl);
+        qx[index] = b * (-cosNode * sinPeri - sinNode * cosPeri * cosIncl);
+        qy[index] = b * (-sinNode * sinPeri + cosNode * cosPeri * cosIncl);
+        qz[index] = b * (cosPeri * sinIncl);
+        return index;
+    }
+
+    /**
+     * Helper method that makes all the arrays big enough to hold the given amount of bodies.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= eccentricity.length) {
+            return;
+        }
+        eccentricity = Arrays.copyOf(eccentricity, capacity);
+        meanAnomalyJ2000 = Arrays.copyOf(meanAnomalyJ2000, capacity);
+        meanMotion = Arrays.copyOf(meanMotion, capacity);
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        pz = Arrays.copyOf(pz, capacity);
+        qx = Arrays.copyOf(qx, capacity);
+        qy = Arrays.copyOf(qy, capacity);
+        qz = Arrays.copyOf(qz, capacity);
+        cosEccentricAnomaly = Arrays.copyOf(cosEccentricAnomaly, capacity);
+        sinEccentricAnomaly = Arrays.copyOf(sinEccentricAnomaly, capacity);
+        coordinates = Arrays.copyOf(coordinates, capacity * 3);
+    }
+
+    public int size() { return size; }
+    public float getX(int index) { return coordinates[index * 3]; }
+    public float getY(int index) { return coordinates[index * 3 + 1]; }
+    public float getZ(int index) { return coordinates[index * 3 + 2]; }
+
+    /**
+     * Method that returns the array the positions are written to, x, y & z of every body after each other. A new array
+     *  is made when bodies are added beyond the capacity, so only get it once all bodies have been added.
+     * @return float[] the positions of all the bodies, which can be longer than 3 times the amount of bodies.
+     */
+    public float[] getCoordinates() { return coordinates; }
+
+    /**
+     * Method that sets where the central body is, so the positions written after this are relative to the same point
+     *  as the rest of the bodies.
+     */
+    public void setCentre(double x, double y, double z) {
+        centreX = x;
+        centreY = y;
+        centreZ = z;
+    }
+
+    /**
+     * Method that places every body where it is at the given moment.
+     * @param daysSinceJ2000 double is the amount of days since J2000.
+     * @param pool ForkJoinPool is the pool to spread the bodies over the cores with, or null to place them all here.
+     */
+    public void update(double daysSinceJ2000, ForkJoinPool pool) {
+        if (pool != null && size >= PARALLEL_THRESHOLD) {
+            pool.invoke(new Chunk(this, 0, size, daysSinceJ2000));
+        } else {
+            update(0, size, daysSinceJ2000);
+        }
+        lastDaysSinceJ2000 = daysSinceJ2000;
+    }
+
+    /**
+     * Helper method that places the bodies from the first index up to (not including) the second one.
+     */
+    private void update(int from, int to, double daysSinceJ2000) {
+        float[] coordinates = this.coordinates;
+        double days = daysSinceJ2000 - lastDaysSinceJ2000;
+        for (int i = from; i < to; i++) {
+            double e = eccentricity[i];
+            double change = meanMotion[i] * days;
+
+            double cosE, sinE;
+            if (Math.abs(change) <= MAX_INCREMENT * (1.0 - e)) {
+                // Solve Kepler's equation for the change d in eccentric anomaly since the last update:
+                //  d - e * (sin(E + d) - sin(E)) = change, with sin(E + d) = sin(E) * cos(d) + cos(E) * sin(d).
+                double cosLast = cosEccentricAnomaly[i], sinLast = sinEccentricAnomaly[i];
+                double d = change / (1.0 - e * cosLast);
+                double cosD = 1, sinD = 0;
+                for (int iteration = 0; iteration < INCREMENT_ITERATIONS; iteration++) {
+                    double d2 = d * d;
+                    sinD = d * (1.0 - d2 * (1.0 / 6.0) * (1.0 - d2 * (1.0 / 20.0) * (1.0 - d2 * (1.0 / 42.0))));
+                    cosD = 1.0 - d2 * 0.5 * (1.0 - d2 * (1.0 / 12.0) * (1.0 - d2 * (1.0 / 30.0) * (1.0 - d2 * (1.0 / 56.0))));
+                    double cosNow = cosLast * cosD - sinLast * sinD;
+                    double step = (d - e * (sinLast * (cosD - 1.0) + cosLast * sinD) - change) / (1.0 - e * cosNow);
+                    d -= step;
+                    // Move the sine and cosine along with d. The step is tiny by now, so the first order is enough.
+                    double sinStep = sinD;
+                    sinD -= cosD * step;
+                    cosD += sinStep * step;
+                    if (Math.abs(step) < INCREMENT_TOLERANCE) {
+                        break;
+                    }
+                }
+                cosE = cosLast * cosD - sinLast * sinD;
+                sinE = sinLast * cosD + cosLast * sinD;
+                // Pull the pair back onto the unit circle, so rounding errors cannot build up over many updates.
+                double fix = 1.5 - 0.5 * (cosE * cosE + sinE * sinE);
+                cosE *= fix;
+                sinE *= fix;
+            } else {
+                // Too far (or never placed yet), so solve it from scratch. NaN changes always end up here.
+                double meanAnomaly = (meanAnomalyJ2000[i] + meanMotion[i] * daysSinceJ2000) % (2.0 * Math.PI);
+                double eccentricAnomaly = solver.solveKepler(meanAnomaly, e);
+                cosE = Math.cos(eccentricAnomaly);
+                sinE = Math.sin(eccentricAnomaly);
+            }
+            cosEccentricAnomaly[i] = cosE;
+            sinEccentricAnomaly[i] = sinE;
+
+            double alongP = cosE - e;
+            coordinates[i * 3] = (float) (centreX + alongP * px[i] + sinE * qx[i]);
+            coordinates[i * 3 + 1] = (float) (centreY + alongP * py[i] + sinE * qy[i]);
+            coordinates[i * 3 + 2] = (float) (centreZ + alongP * pz[i] + sinE * qz[i]);
+        }
+    }
+
+    /**
+     * Task that places a range of bodies, splitting it up in halves until the ranges are small enough.
+     */
+    @SuppressWarnings("serial")
+    private static class Chunk extends RecursiveAction {
+        private final AsteroidBelt belt;
+        private final int from, to;
+        private final double daysSinceJ2000;
+
+        private Chunk(AsteroidBelt belt, int from, int to, double daysSinceJ2000) {
+            this.belt = belt;
+            this.from = from;
+            this.to = to;
+            this.daysSinceJ2000 = daysSinceJ2000;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                belt.update(from, to, daysSinceJ2000);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Chunk(belt, from, middle, daysSinceJ2000), new Chunk(belt, middle, to, daysSinceJ2000));
+            }
+        }
+    }
+}
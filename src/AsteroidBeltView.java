@@ -0,0 +1,57 @@
+import javax.media.j3d.Geometry;
+import javax.media.j3d.GeometryArray;
+import javax.media.j3d.GeometryUpdater;
+import java.awt.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class that draws an AsteroidBelt using StdDraw3D, as one cloud of points. Java 3D reads the positions straight from
+ *  the array of the belt (by reference), so nothing is copied or created when the belt moves. The belt may only write
+ *  to that array while Java 3D is not reading it, which is why the belt is moved from within updateData.
+ */
+public class AsteroidBeltView implements GeometryUpdater {
+    private final AsteroidBelt belt;
+    private final GeometryArray points;
+    private final ForkJoinPool pool;
+
+    // The moment to place the belt at in the next updateData.
+    private double daysSinceJ2000;
+
+    /**
+     * Method that creates the cloud of points for the given belt. All bodies must have been added to the belt already.
+     * @param belt AsteroidBelt is the belt to draw.
+     * @param color Color is the colour of the points.
+     * @param pool ForkJoinPool is the pool to move the belt over all cores with, or null to move it on a single one.
+     */
+    public AsteroidBeltView(AsteroidBelt belt, Color color, ForkJoinPool pool) {
+        this.belt = belt;
+        this.pool = pool;
+        Color originalColor = StdDraw3D.getPenColor();
+        StdDraw3D.setPenColor(color);
+        this.points = StdDraw3D.pointsByReference(belt.getCoordinates(), belt.size());
+        StdDraw3D.setPenColor(originalColor);
+    }
+
+    /**
+     * Method that moves the belt to where it is at the given simulated time, around wherever the given body is now.
+     * @param simTimeMillis double is the simulated time in milliseconds, counted in days since J2000 by the belt.
+     * @param centre Body is the body the belt orbits, which must already have been placed for this time.
+     */
+    public void update(double simTimeMillis, Body centre) {
+        daysSinceJ2000 = simTimeMillis / 86400000.0;
+        belt.setCentre(centre.getX(), centre.getY(), centre.getZ());
+        points.updateData(this);
+    }
+
+    /**
+     * Method that Java 3D calls back from updateData, at a moment the coordinates can safely be written to.
+     */
+    @Override
+    public void updateData(Geometry geometry) {
+        belt.update(daysSinceJ2000, pool);
+    }
+
+    public AsteroidBelt getBelt() {
+        return belt;
+    }
+}
@@ -0,0 +1,398 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that estimates the pull on every body with the Barnes-Hut method, so systems of hundreds of thousands of bodies
+ *  can be moved by gravity. The bodies are grouped in an octree: a cube around all of them, split in eight smaller
+ *  cubes, which are split again, and so on. A group that looks small enough from where a body is (its size divided by
+ *  its distance is below the opening angle theta) pulls on the body as if all of its mass was in its center of mass.
+ *  Only groups that are too close are opened up further. A theta of 0 gives the exact result, bigger is faster but
+ *  less precise; 0.5 is the usual choice.
+ * The tree is rebuilt every time, without creating any objects per node:
+ *  - Every body gets a Morton code: the bits of its x, y & z cell in a 2^14 grid, interleaved. Sorting by this code puts
+ *     the bodies of every cube of the tree right after each other, so a node is just a range in the sorted bodies.
+ *  - The nodes are kept in flat arrays of primitives that are only grown, never thrown away. The children of a node are
+ *     always next to each other in these arrays, handed out with an AtomicInteger so the tree can be built in parallel.
+ *  - Cubes that would hold all the bodies of their parent are skipped, so every node that is not a leaf has at least
+ *     two children and the tree never needs more than two nodes per body.
+ * The bodies are walked in the sorted order, so bodies that are close together (and so open up the same nodes) are
+ *  handled by the same thread one after the other.
+ */
+public class BarnesHutSolver implements GravitySolver {
+    // The amount of bits per axis in the Morton codes, which is also the deepest the tree can go.
+    private static final int LEVELS = 14;
+    // The amount of bits the index of a body takes up in the sorting keys, right below its Morton code.
+    private static final int INDEX_BITS = 21;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    public static final int MAX_BODIES = 1 << INDEX_BITS;
+
+    private static final int DEFAULT_LEAF_CAPACITY = 8;
+    // Ranges of bodies bigger than this are handed over to the pool, both when building and when walking the tree.
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int WALK_CHUNK_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+    private final double theta;
+    private final int leafCapacity;
+
+    // The bodies sorted by Morton code: the sorting keys, the index each one had before sorting and its values.
+    private long[] keys = new long[0];
+    private int[] order = new int[0];
+    private double[] sortedX = new double[0], sortedY = new double[0], sortedZ = new double[0], sortedMass = new double[0];
+
+    // The nodes of the tree. Node 0 is the root. A node without children is a leaf.
+    private int[] nodeFirst = new int[0], nodeCount = new int[0], nodeChild = new int[0], nodeChildren = new int[0];
+    private double[] nodeSize = new double[0], nodeMass = new double[0], nodeX = new double[0], nodeY = new double[0], nodeZ = new double[0];
+    private final AtomicInteger nodesUsed = new AtomicInteger();
+
+    private double rootSize;
+    private int size;
+
+    public BarnesHutSolver(double theta, ForkJoinPool pool) {
+        this(theta, DEFAULT_LEAF_CAPACITY, pool);
+    }
+
+    /**
+     * Method that creates a solver with the given precision.
+     * @param theta double is the opening angle. Groups whose size divided by their distance is below it are not opened.
+     * @param leafCapacity int is the most bodies a node holds before it is split up.
+     * @param pool ForkJoinPool is the pool to build and walk the tree with. Give null to do it all on the calling thread.
+     */
+    public BarnesHutSolver(double theta, int leafCapacity, ForkJoinPool pool) {
+        if (!(theta >= 0)) throw new IllegalArgumentException("The opening angle cannot be negative!");
+        if (leafCapacity < 1) throw new IllegalArgumentException("A leaf must be able to hold at least one body!");
+        this.theta = theta;
+        this.leafCapacity = leafCapacity;
+        this.pool = pool;
+    }
+
+    public double getTheta() { return theta; }
+    public int getNodeCount() { return nodesUsed.get(); }
+
+    @Override
+    public void computeAccelerations(int size, double[] x, double[] y, double[] z, double[] mass, double g, double softeningSquared, double[] ax, double[] ay, double[] az) {
+        if (size > MAX_BODIES) {
+            throw new IllegalArgumentException("At most " + MAX_BODIES + " bodies are supported, but " + size + " were given!");
+        }
+        this.size = size;
+        if (size == 0) {
+            return;
+        }
+        ensureCapacity(size);
+        sort(x, y, z, mass);
+        buildTree();
+        walk(g, softeningSquared, ax, ay, az);
+    }
+
+    /**
+     * Helper method that grows all the arrays, if needed, to fit the given amount of bodies and the nodes they can need.
+     */
+    private void ensureCapacity(int size) {
+        if (keys.length < size) {
+            int capacity = Math.max(size, keys.length * 2);
+            keys = new long[capacity];
+            order = new int[capacity];
+            sortedX = new double[capacity];
+            sortedY = new double[capacity];
+            sortedZ = new double[capacity];
+            sortedMass = new double[capacity];
+        }
+        int nodes = 2 * size + 1;
+        if (nodeFirst.length < nodes) {
+            int capacity = Math.max(nodes, nodeFirst.length * 2);
+            nodeFirst = new int[capacity];
+            nodeCount = new int[capacity];
+            nodeChild = new int[capacity];
+            nodeChildren = new int[capacity];
+            nodeSize = new double[capacity];
+            nodeMass = new double[capacity];
+            nodeX = new double[capacity];
+            nodeY = new double[capacity];
+            nodeZ = new double[capacity];
+        }
+    }
+
+    /**
+     * Helper method that gives every body its Morton code within the cube around all bodies and sorts them by it.
+     */
+    private void sort(double[] x, double[] y, double[] z, double[] mass) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        rootSize = Math.max(Math.max(maxX - minX, maxY - minY), Math.max(maxZ - minZ, Double.MIN_NORMAL));
+        double originX = minX, originY = minY, originZ = minZ;
+        double cellsPerUnit = (1 << LEVELS) / (rootSize * (1.0 + 1e-9));
+
+        forRange(size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                long code = spread(cell((x[i] - originX) * cellsPerUnit))
+                        | (spread(cell((y[i] - originY) * cellsPerUnit)) << 1)
+                        | (spread(cell((z[i] - originZ) * cellsPerUnit)) << 2);
+                keys[i] = (code << INDEX_BITS) | i;
+            }
+        });
+        if (pool != null && size > PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(keys, 0, size);
+        } else {
+            Arrays.sort(keys, 0, size);
+        }
+        forRange(size, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                int i = (int) (keys[k] & INDEX_MASK);
+                order[k] = i;
+                sortedX[k] = x[i];
+                sortedY[k] = y[i];
+                sortedZ[k] = z[i];
+                sortedMass[k] = mass[i];
+            }
+        });
+    }
+
+    private static int cell(double position) {
+        return Math.min(Math.max((int) position, 0), (1 << LEVELS) - 1);
+    }
+
+    /**
+     * Helper method that spreads the lowest 14 bits of the given number out, so there are two zero bits after each one.
+     */
+    private static long spread(int bits) {
+        long v = bits & 0x3FFFL;
+        v = (v | (v << 16)) & 0x0000FF0000FFL;
+        v = (v | (v << 8)) & 0x00F00F00F00FL;
+        v = (v | (v << 4)) & 0x0C30C30C30C3L;
+        v = (v | (v << 2)) & 0x249249249249L;
+        return v;
+    }
+
+    /**
+     * Helper method that returns which of the eight cubes of the given level the body at the given sorted index is in.
+     */
+    private int octant(int k, int level) {
+        return (int) ((keys[k] >>> (INDEX_BITS + 3 * (LEVELS - 1 - level))) & 7);
+    }
+
+    private void buildTree() {
+        nodesUsed.set(1);
+        if (pool != null && size > PARALLEL_THRESHOLD) {
+            pool.invoke(new BuildTask(0, 0, size, 0));
+        } else {
+            build(0, 0, size, 0);
+        }
+    }
+
+    /**
+     * Helper method that fills in the given node for the given range of sorted bodies, which all lie in the same cube of
+     *  the given level, then does the same for its children. Big ranges are built in parallel.
+     */
+    private void build(int node, int from, int to, int level) {
+        nodeFirst[node] = from;
+        nodeCount[node] = to - from;
+        nodeChildren[node] = 0;
+
+        // Skip the levels at which all the bodies are still in the same cube, as those would be nodes with one child.
+        while (to - from > leafCapacity && level < LEVELS && octant(from, level) == octant(to - 1, level)) {
+            level++;
+        }
+        nodeSize[node] = rootSize / (1 << level);
+
+        if (to - from <= leafCapacity || level >= LEVELS) {
+            double m = 0, mx = 0, my = 0, mz = 0;
+            for (int k = from; k < to; k++) {
+                m += sortedMass[k];
+                mx += sortedMass[k] * sortedX[k];
+                my += sortedMass[k] * sortedY[k];
+                mz += sortedMass[k] * sortedZ[k];
+            }
+            setCenterOfMass(node, m, mx, my, mz, from);
+            return;
+        }
+
+        // The bodies are sorted, so the eight cubes follow each other. Count how many of them hold any bodies.
+        int children = 1;
+        for (int k = from + 1; k < to; k++) {
+            if (octant(k, level) != octant(k - 1, level)) {
+                children++;
+            }
+        }
+        int first = nodesUsed.getAndAdd(children);
+        nodeChild[node] = first;
+        nodeChildren[node] = children;
+
+        boolean parallel = pool != null && (to - from) > PARALLEL_THRESHOLD;
+        ArrayList<BuildTask> tasks = parallel ? new ArrayList<>(children) : null;
+        int start = from;
+        int child = first;
+        for (int k = from + 1; k <= to; k++) {
+            if (k == to || octant(k, level) != octant(k - 1, level)) {
+                if (parallel) {
+                    tasks.add(new BuildTask(child, start, k, level + 1));
+                } else {
+                    build(child, start, k, level + 1);
+                }
+                child++;
+                start = k;
+            }
+        }
+        if (parallel) {
+            RecursiveAction.invokeAll(tasks);
+        }
+
+        double m = 0, mx = 0, my = 0, mz = 0;
+        for (int c = first; c < first + children; c++) {
+            m += nodeMass[c];
+            mx += nodeMass[c] * nodeX[c];
+            my += nodeMass[c] * nodeY[c];
+            mz += nodeMass[c] * nodeZ[c];
+        }
+        setCenterOfMass(node, m, mx, my, mz, from);
+    }
+
+    private void setCenterOfMass(int node, double m, double mx, double my, double mz, int firstBody) {
+        nodeMass[node] = m;
+        if (m > 0) {
+            nodeX[node] = mx / m;
+            nodeY[node] = my / m;
+            nodeZ[node] = mz / m;
+        } else {
+            // Nothing in here pulls on anything, so where its center is does not matter.
+            nodeX[node] = sortedX[firstBody];
+            nodeY[node] = sortedY[firstBody];
+            nodeZ[node] = sortedZ[firstBody];
+        }
+    }
+
+    /**
+     * Task that builds a node and everything below it.
+     */
+    @SuppressWarnings("serial")
+    private class BuildTask extends RecursiveAction {
+        private final int node, from, to, level;
+
+        private BuildTask(int node, int from, int to, int level) {
+            this.node = node;
+            this.from = from;
+            this.to = to;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            build(node, from, to, level);
+        }
+    }
+
+    /**
+     * Helper method that calculates the pull on every body by walking the tree, in the sorted order of the bodies.
+     */
+    private void walk(double g, double softeningSquared, double[] ax, double[] ay, double[] az) {
+        double thetaSquared = theta * theta;
+        forRange(size, (from, to) -> {
+            // Every node that is opened puts at most eight children on the stack, once for every level.
+            int[] stack = new int[8 * (LEVELS + 1) + 1];
+            for (int k = from; k < to; k++) {
+                double px = sortedX[k], py = sortedY[k], pz = sortedZ[k];
+                double sumX = 0, sumY = 0, sumZ = 0;
+                int top = 0;
+                stack[top++] = 0;
+                while (top > 0) {
+                    int node = stack[--top];
+                    double dx = nodeX[node] - px;
+                    double dy = nodeY[node] - py;
+                    double dz = nodeZ[node] - pz;
+                    double distSquared = dx * dx + dy * dy + dz * dz;
+                    int children = nodeChildren[node];
+
+                    // A node holding the body itself is always opened, as with a big opening angle its center of
+                    //  mass can be far enough from the body to pass, which would make the body pull on itself.
+                    boolean holdsBody = k >= nodeFirst[node] && k < nodeFirst[node] + nodeCount[node];
+                    if (!holdsBody && nodeSize[node] * nodeSize[node] < thetaSquared * distSquared) {
+                        // Far enough away to pull as if it was a single body.
+                        double invDist = 1.0 / Math.sqrt(distSquared + softeningSquared);
+                        double strength = nodeMass[node] * invDist * invDist * invDist;
+                        sumX += dx * strength;
+                        sumY += dy * strength;
+                        sumZ += dz * strength;
+                    } else if (children == 0) {
+                        // A leaf that is too close is summed up body by body.
+                        int end = nodeFirst[node] + nodeCount[node];
+                        for (int j = nodeFirst[node]; j < end; j++) {
+                            if (j == k) {
+                                continue;
+                            }
+                            double bx = sortedX[j] - px;
+                            double by = sortedY[j] - py;
+                            double bz = sortedZ[j] - pz;
+                            double invDist = 1.0 / Math.sqrt(bx * bx + by * by + bz * bz + softeningSquared);
+                            double strength = sortedMass[j] * invDist * invDist * invDist;
+                            sumX += bx * strength;
+                            sumY += by * strength;
+                            sumZ += bz * strength;
+                        }
+                    } else {
+                        int first = nodeChild[node];
+                        for (int c = first; c < first + children; c++) {
+                            stack[top++] = c;
+                        }
+                    }
+                }
+                int i = order[k];
+                ax[i] = g * sumX;
+                ay[i] = g * sumY;
+                az[i] = g * sumZ;
+            }
+        });
+    }
+
+    /**
+     * Interface for work that is done on a range of bodies, from the first index up to (not including) the second.
+     */
+    private interface RangeWork {
+        void run(int from, int to);
+    }
+
+    /**
+     * Helper method that does the given work on all bodies, split up in chunks on the pool if there are enough of them.
+     */
+    private void forRange(int size, RangeWork work) {
+        if (pool == null || size <= PARALLEL_THRESHOLD) {
+            work.run(0, size);
+        } else {
+            pool.invoke(new RangeTask(work, 0, size));
+        }
+    }
+
+    /**
+     * Task that does work on a range of bodies, splitting itself in half until the range is small enough.
+     */
+    @SuppressWarnings("serial")
+    private static class RangeTask extends RecursiveAction {
+        private final RangeWork work;
+        private final int from, to;
+
+        private RangeTask(RangeWork work, int from, int to) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= WALK_CHUNK_SIZE) {
+                work.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(work, from, middle), new RangeTask(work, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that holds the orbital values and the current state of every body in the simulation as flat arrays of
+ *  primitives, instead of as fields spread over many objects. A body is nothing more than an index into these arrays.
+ * Bodies are always added after their parent, so the parent of a body always has a lower index than the body itself.
+ *  Because of this, the whole hierarchy can be updated in a single pass from the first index to the last, as every
+ *  parent is guaranteed to be placed before any of its children are.
+ * The values are stored in the following formats:
+ *  - orbitWidth & orbitHeight in simulation units. The width and height of the elliptical orbit around the parent.
+ *  - maxAngle & obliquity in degrees.
+ *  - orbitalPeriod & rotatePeriod in milliseconds. Zero means the body does not orbit or spin respectively, a negative
+ *    period that it orbits or spins the other way around.
+ *  - positions in simulation units, spin in degrees away from the starting orientation.
+ * The store can also be updated in parallel. Bodies at the same depth of the hierarchy (like all the planets of the Sun,
+ *  or all the moons of Jupiter) do not depend on each other once their parents are placed, so every depth level is
+ *  split up in chunks that are placed on a ForkJoinPool, one level after the other. Every body is still calculated
+ *  from exactly the same values as in the single pass, so the results are identical.
+ */
+public class BodyStore implements PositionSource {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private int size = 0;
+
+    // The hierarchy. Holds -1 for a body without a parent. The depth of a body without a parent is 0.
+    private int[] parent, depth;
+
+    // The indices of all bodies ordered by depth, and where each depth level starts in that order. Only rebuilt once
+    //  bodies have been added since the last time it was needed.
+    private int[] levelOrder = new int[0];
+    private int[] levelStart = new int[0];
+    private boolean levelsDirty = true;
+
+    // The most bodies a single parallel task places before the rest of its level is split off to other tasks.
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    // The constant orbital values of each body.
+    private double[] orbitWidth, orbitHeight, maxAngle, obliquity, orbitalPeriod, rotatePeriod, radius;
+
+    // The values that change as the simulation runs.
+    private double[] posX, posY, posZ, spin;
+    // The simulated time the bodies were last placed or spun for, so a body added later can be placed for that time too.
+    private double timeMillis = 0;
+
+    // The physical values, only used when the bodies are moved by gravity. The mass is in kilograms, 0 for a body that
+    //  does not pull on anything. The orbit scale is how much bigger the orbit around the parent is drawn than it
+    //  really is, as moons are drawn much further from their planets to be visible at all.
+    private double[] mass, orbitScale;
+
+    public BodyStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BodyStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        parent = new int[capacity];
+        depth = new int[capacity];
+        orbitWidth = new double[capacity];
+        orbitHeight = new double[capacity];
+        maxAngle = new double[capacity];
+        obliquity = new double[capacity];
+        orbitalPeriod = new double[capacity];
+        rotatePeriod = new double[capacity];
+        radius = new double[capacity];
+        posX = new double[capacity];
+        posY = new double[capacity];
+        posZ = new double[capacity];
+        spin = new double[capacity];
+        mass = new double[capacity];
+        orbitScale = new double[capacity];
+    }
+
+    /**
+     * Method that adds a body orbiting the given parent to the store.
+     * @param parent int is the index of the parent of the body. Must already be in the store.
+     * @param radius double is the radius of the body in simulation units.
+     * @param maxAngle double is the angle at which the body moves up and down in its orbit.
+     * @param obliquity double is the tilt of the axis of the body.
+     * @param rotatePeriodMs double is the amount of milliseconds needed for the body to do one axis rotation.
+     * @param orbitalPeriodMs double is the amount of milliseconds needed for the body to orbit the parent once.
+     * @param orbitWidth double is the width of the orbit around the parent in simulation units.
+     * @param orbitHeight double is the height of the orbit around the parent in simulation units.
+     * @return int the index of the new body.
+     */
+    public int addOrbiting(int parent, double radius, double maxAngle, double obliquity, double rotatePeriodMs, double orbitalPeriodMs, double orbitWidth, double orbitHeight) {
+        if (parent < 0 || parent >= size) {
+            throw new IllegalArgumentException("The parent must be added to the store before its children!");
+        }
+        int index = add(parent, radius, obliquity, rotatePeriodMs);
+        this.maxAngle[index] = maxAngle;
+        this.orbitalPeriod[index] = orbitalPeriodMs;
+        this.orbitWidth[index] = orbitWidth;
+        this.orbitHeight[index] = orbitHeight;
+        return index;
+    }
+
+    /**
+     * Method that adds a body without a parent to the store. It stays at the given position, but does still spin.
+     * @param x double is the x-position of the body in simulation units.
+     * @param y double is the y-position of the body in simulation units.
+     * @param z double is the z-position of the body in simulation units.
+     * @return int the index of the new body.
+     */
+    public int addRoot(double x, double y, double z, double radius, double obliquity, double rotatePeriodMs) {
+        int index = add(-1, radius, obliquity, rotatePeriodMs);
+        posX[index] = x;
+        posY[index] = y;
+        posZ[index] = z;
+        return index;
+    }
+
+    private int add(int parent, double radius, double obliquity, double rotatePeriodMs) {
+        if (size == this.parent.length) {
+            grow();
+        }
+        int index = size++;
+        this.parent[index] = parent;
+        this.depth[index] = (parent < 0) ? 0 : (depth[parent] + 1);
+        levelsDirty = true;
+        this.radius[index] = radius;
+        this.obliquity[index] = obliquity;
+        this.rotatePeriod[index] = rotatePeriodMs;
+        this.mass[index] = 0;
+        this.orbitScale[index] = 1;
+        return index;
+    }
+
+    /**
+     * Helper method that doubles the capacity of all the arrays of the store.
+     */
+    private void grow() {
+        int capacity = parent.length * 2;
+        parent = Arrays.copyOf(parent, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        orbitWidth = Arrays.copyOf(orbitWidth, capacity);
+        orbitHeight = Arrays.copyOf(orbitHeight, capacity);
+        maxAngle = Arrays.copyOf(maxAngle, capacity);
+        obliquity = Arrays.copyOf(obliquity, capacity);
+        orbitalPeriod = Arrays.copyOf(orbitalPeriod, capacity);
+        rotatePeriod = Arrays.copyOf(rotatePeriod, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        posZ = Arrays.copyOf(posZ, capacity);
+        spin = Arrays.copyOf(spin, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        orbitScale = Arrays.copyOf(orbitScale, capacity);
+    }
+
+    public int size() { return size; }
+    public int getParent(int index) { return parent[index]; }
+    public int getDepth(int index) { return depth[index]; }
+    public int getChunkSize() { return chunkSize; }
+    public double getTimeMillis() { return timeMillis; }
+    public double getX(int index) { return posX[index]; }
+    public double getY(int index) { return posY[index]; }
+    public double getZ(int index) { return posZ[index]; }
+    public double getSpin(int index) { return spin[index]; }
+    public double getRadius(int index) { return radius[index]; }
+    public double getObliquity(int index) { return obliquity[index]; }
+    public double getMaxAngle(int index) { return maxAngle[index]; }
+    public double getOrbitWidth(int index) { return orbitWidth[index]; }
+    public double getOrbitHeight(int index) { return orbitHeight[index]; }
+    public double getMass(int index) { return mass[index]; }
+    public double getOrbitScale(int index) { return orbitScale[index]; }
+
+    public void setMass(int index, double mass) {
+        if (!(mass >= 0)) throw new IllegalArgumentException("The mass cannot be negative!");
+        this.mass[index] = mass;
+    }
+
+    public void setOrbitScale(int index, double orbitScale) {
+        if (!(orbitScale > 0)) throw new IllegalArgumentException("The orbit scale must be positive!");
+        this.orbitScale[index] = orbitScale;
+    }
+
+    /**
+     * Method that places the given body at the given position, instead of where its orbit would put it. Used when the
+     *  positions come from somewhere else, like a precomputed ephemeris. The next update puts it back on its orbit.
+     */
+    public void setPosition(int index, double x, double y, double z) {
+        posX[index] = x;
+        posY[index] = y;
+        posZ[index] = z;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("The chunk size must be at least 1!");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Method that places every body in the store where it is at the given point in simulated time, in one pass.
+     * @param simTimeMillis double is the amount of simulated milliseconds since the start of the simulation.
+     */
+    @Override
+    public void update(double simTimeMillis) {
+        timeMillis = simTimeMillis;
+        for (int i = 0; i < size; i++) {
+            update(i, simTimeMillis);
+        }
+    }
+
+    /**
+     * Method that places every body in the store where it is at the given point in simulated time, using the threads of
+     *  the given pool. Gives exactly the same results as update, but spreads every depth level over all the cores.
+     * @param simTimeMillis double is the amount of simulated milliseconds since the start of the simulation.
+     * @param pool ForkJoinPool is the pool to run the chunks of each level on.
+     */
+    public void updateParallel(double simTimeMillis, ForkJoinPool pool) {
+        timeMillis = simTimeMillis;
+        if (levelsDirty) {
+            buildLevels();
+        }
+        for (int level = 0; level < levelStart.length - 1; level++) {
+            int from = levelStart[level];
+            int to = levelStart[level + 1];
+            if (to - from <= chunkSize) {
+                // Not worth handing over to the pool.
+                for (int k = from; k < to; k++) {
+                    update(levelOrder[k], simTimeMillis);
+                }
+            } else {
+                pool.invoke(new LevelChunk(from, to, simTimeMillis));
+            }
+        }
+    }
+
+    /**
+     * Helper method that sorts the indices of all bodies by their depth, keeping bodies of the same depth in the order
+     *  they were added in.
+     */
+    private void buildLevels() {
+        int maxDepth = 0;
+        for (int i = 0; i < size; i++) {
+            maxDepth = Math.max(maxDepth, depth[i]);
+        }
+
+        // Count the bodies per level, then turn those counts into where each level starts.
+        levelStart = new int[maxDepth + 2];
+        for (int i = 0; i < size; i++) {
+            levelStart[depth[i] + 1]++;
+        }
+        for (int level = 1; level < levelStart.length; level++) {
+            levelStart[level] += levelStart[level - 1];
+        }
+
+        levelOrder = new int[size];
+        int[] next = Arrays.copyOf(levelStart, levelStart.length - 1);
+        for (int i = 0; i < size; i++) {
+            levelOrder[next[depth[i]]++] = i;
+        }
+        levelsDirty = false;
+    }
+
+    /**
+     * Task that places a range of bodies of a single depth level, splitting itself in half until the range is no bigger
+     *  than the chunk size.
+     */
+    @SuppressWarnings("serial")
+    private class LevelChunk extends RecursiveAction {
+        private final int from, to;
+        private final double simTimeMillis;
+
+        private LevelChunk(int from, int to, double simTimeMillis) {
+            this.from = from;
+            this.to = to;
+            this.simTimeMillis = simTimeMillis;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int k = from; k < to; k++) {
+                    update(levelOrder[k], simTimeMillis);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LevelChunk(from, middle, simTimeMillis), new LevelChunk(middle, to, simTimeMillis));
+            }
+        }
+    }
+
+    /**
+     * Method that places a single body where it is at the given point in simulated time. Its parent must already have
+     *  been placed for that same time.
+     * @param index int is the index of the body to place.
+     * @param simTimeMillis double is the amount of simulated milliseconds since the start of the simulation.
+     */
+    public void update(int index, double simTimeMillis) {
+        updateSpin(index, simTimeMillis);
+
+        int p = parent[index];
+        if (p < 0) {
+            // Bodies without a parent stay where they were put.
+            return;
+        }
+
+        // A negative period is a retrograde orbit, so its phase runs backwards.
+        double phase = (simTimeMillis / orbitalPeriod[index]) % 1.0;
+        if (phase < 0) { phase += 1.0; }
+        double orbitRad = phase * 2.0 * Math.PI;
+
+        // If viewing top-down, this is where on the orbit the body is, relative to its parent.
+        double topDownX = orbitWidth[index] * Math.cos(orbitRad);
+        double topDownY = orbitHeight[index] * Math.sin(orbitRad);
+
+        // The body moves from its highest angle down to its lowest angle in the first half of its orbit, then back up
+        //  in the second half. Tilting the top-down x by that angle gives the actual x and the z height.
+        double angleRad = Math.toRadians(Math.abs(maxAngle[index] * (4.0 * Math.abs(phase - 0.5) - 1.0)));
+        double x = topDownX * Math.cos(angleRad / 2.0);
+        double z = topDownX * Math.sin(angleRad);
+
+        posX[index] = posX[p] + x;
+        posY[index] = posY[p] + topDownY;
+        posZ[index] = posZ[p] + z;
+    }
+
+    /**
+     * Method that only rotates every body on its axis for the given point in simulated time, leaving the positions as
+     *  they are.
+     * @param simTimeMillis double is the amount of simulated milliseconds since the start of the simulation.
+     */
+    public void updateSpins(double simTimeMillis) {
+        timeMillis = simTimeMillis;
+        for (int i = 0; i < size; i++) {
+            updateSpin(i, simTimeMillis);
+        }
+    }
+
+    private void updateSpin(int index, double simTimeMillis) {
+        double rotate = rotatePeriod[index];
+        spin[index] = (rotate == 0) ? 0 : (360.0 * (simTimeMillis / rotate)) % 360.0;
+    }
+}
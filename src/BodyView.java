@@ -0,0 +1,156 @@
+import java.awt.*;
+
+/**
+ * Class that draws a Body using StdDraw3D. It creates the sphere of the Body and any rings it has, all attached to a
+ *  frame that is moved to wherever the store last placed the Body. The frame of a moon is attached to the frame of its
+ *  planet, as are the orbit paths around the planet (see OrbitPathView), so they all ride along with the planet and only
+ *  the frame of every Body and the spin of its sphere are written to each frame. Its name is drawn by LabelBatch. The
+ *  Body itself never knows it is drawn; the shapes are only ever written to from here, never read back from.
+ *
+ * @author Yoran Kerbusch (EHU Student 24143341)
+ * Made for CIS2166 Computer Graphics & Modelling Coursework 2 (2018-2019)
+ */
+public class BodyView {
+    private final Body body;
+    // The frame is only moved, its position relative to the frame of the parent. The planet is only spun within it.
+    private final StdDraw3D.Shape frame, planet;
+    // The view of the parent, whose frame this frame is attached to, or null if this frame is placed on its own.
+    private BodyView parentView = null;
+    // The colour of the Body, which its name and orbit path (see OrbitPathView) are drawn in.
+    private final Color color;
+
+    // What was last written to the shapes, so they are only written to again when something actually changed.
+    private double shownX = Double.NaN, shownY, shownZ, shownSpin = Double.NaN;
+
+    /**
+     * Method that creates the shapes for the given Body, which is not textured, but instead just a coloured sphere.
+     * @param body Body is the Body to draw.
+     * @param color Color is the colour the planet and its name must have.
+     */
+    public BodyView(Body body, Color color) {
+        this(body, coloredSphere(body, color), color);
+    }
+
+    /**
+     * Exactly the same as the BodyView above, only this one applies the given texture to the Body.
+     */
+    public BodyView(Body body, String textureURL, Color color) {
+        this(body, texturedSphere(body, textureURL, color), color);
+    }
+
+    /**
+     * Exactly the same as the BodyView above, only the texture is given to the Body by the given manager, at a resolution
+     *  that fits how big the Body is drawn. The Body is shown in its colour until its first texture has arrived.
+     */
+    public BodyView(Body body, String textureURL, Color color, TextureManager textures) {
+        this(body, color);
+        textures.manage(planet, textureURL, body);
+    }
+
+    /**
+     * Helper method that creates the sphere of the Body in the given colour, leaving the pen colour as it was.
+     */
+    private static StdDraw3D.Shape coloredSphere(Body body, Color color) {
+        Color originalColor = StdDraw3D.getPenColor();
+        StdDraw3D.setPenColor(color);
+        StdDraw3D.Shape sphere = StdDraw3D.sphere(0, 0, 0, body.getRadius(), -90, body.getObliquity(), 0);
+        StdDraw3D.setPenColor(originalColor);
+        return sphere;
+    }
+
+    /**
+     * Helper method that creates the textured sphere of the Body. When textures are loaded in the background, the sphere
+     *  is shown in the colour of the Body until its texture has arrived.
+     */
+    private static StdDraw3D.Shape texturedSphere(Body body, String textureURL, Color color) {
+        Color originalColor = StdDraw3D.getPenColor();
+        if (StdDraw3D.getAsyncTextures()) {
+            StdDraw3D.setPenColor(color);
+        }
+        StdDraw3D.Shape sphere = StdDraw3D.sphere(0, 0, 0, body.getRadius(), -90, body.getObliquity(), 0, textureURL);
+        StdDraw3D.setPenColor(originalColor);
+        return sphere;
+    }
+
+    private BodyView(Body body, StdDraw3D.Shape planet, Color color) {
+        this.body = body;
+        // The planet is created at the origin of the frame, which is moved to the right place at the end.
+        this.frame = StdDraw3D.group();
+        this.planet = planet;
+        this.color = color;
+        frame.attach(planet);
+
+        update();
+    }
+
+    public Body getBody() { return body; }
+
+    public Color getColor() { return color; }
+
+    /**
+     * Method that attaches the frame of this Body to the frame of the given view, so it moves along with it. Must be the
+     *  view of the parent of the Body.
+     * @param parentView BodyView is the view of the parent of the Body.
+     */
+    public void attachTo(BodyView parentView) {
+        if (parentView.body != body.getParent()) {
+            throw new IllegalArgumentException(body.getName() + " can only be attached to the view of its parent!");
+        }
+        this.parentView = parentView;
+        parentView.frame.attach(frame);
+        shownX = Double.NaN;
+        update();
+    }
+
+    /**
+     * Method that attaches the given shape to the frame of this Body, so it moves along with the Body without ever
+     *  being written to itself.
+     * @param shape StdDraw3D.Shape is the shape to attach, placed relative to the centre of the Body.
+     */
+    public void attach(StdDraw3D.Shape shape) {
+        frame.attach(shape);
+    }
+
+    /**
+     * Method that moves the frame of the Body to where the store last placed it, as well as rotating the Body on its
+     *  axis. Its rings and everything attached to it move along with the frame.
+     * This is called for every Body every frame, so it must not allocate anything.
+     */
+    public void update() {
+        double x = body.getX();
+        double y = body.getY();
+        double z = body.getZ();
+        if (parentView != null) {
+            Body parent = body.getParent();
+            x -= parent.getX();
+            y -= parent.getY();
+            z -= parent.getZ();
+        }
+        if (x != shownX || y != shownY || z != shownZ) {
+            frame.setPosition(x, y, z);
+            shownX = x;
+            shownY = y;
+            shownZ = z;
+        }
+
+        double spin = body.getSpin();
+        if (spin != shownSpin) {
+            // Rotate the planet around its own axis, starting from the orientation it was created with.
+            planet.setPose(0, 0, 0, -90, body.getObliquity(), 0, spin);
+            shownSpin = spin;
+        }
+    }
+
+    public void addRing(double radius, double angle, Color color) {
+        Color originalColor = StdDraw3D.getPenColor();
+        StdDraw3D.setPenColor(color);
+        StdDraw3D.Shape ring = StdDraw3D.cylinder(0, 0, 0, (radius / SolarSystemCourseWork2.sizeScale), 0, -90, (angle % 180.0), 0);
+        StdDraw3D.setPenColor(originalColor);
+        frame.attach(ring);
+    }
+
+    public void addRing(double radius, double angle, String imageURL) {
+        StdDraw3D.Shape ring = StdDraw3D.ellipsoidSP(0, 0, 0, (radius / SolarSystemCourseWork2.sizeScale), 0, (radius / SolarSystemCourseWork2.sizeScale), 90, (angle % 180.0), 0, imageURL);
+        frame.attach(ring);
+    }
+}
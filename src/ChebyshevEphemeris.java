@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that holds precomputed positions of a set of bodies over a fixed stretch of time, so they do not have to be
+ *  calculated again every time that stretch is played back. The time is split up in intervals of the same length and
+ *  for every interval, the x, y & z of every body are fitted with a Chebyshev polynomial. Looking up a position is then
+ *  only a handful of multiply-adds, no matter how the positions were calculated in the first place.
+ * The polynomials are written to a binary file, which is memory-mapped when opened, so the operating system only reads
+ *  the parts of it that are actually used and shares them between every program that opens the same file.
+ * The file is laid out as follows (little-endian, so the coefficients can be read without swapping bytes on most machines):
+ *  - a header: the magic number, the version, the amount of bodies, the degree of the polynomials, the amount of
+ *     intervals (all ints), then the start time & the length of an interval (both doubles).
+ *  - the coefficients as doubles, ordered by interval, then by body, then by axis (x, y, z), then from the lowest
+ *     degree up. So all the bodies at one moment are close together in the file.
+ */
+public class ChebyshevEphemeris {
+    private static final int MAGIC = 0x43484542; // "CHEB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES + 2 * Double.BYTES;
+
+    private final int bodyCount, degree, intervalCount;
+    private final double startTime, intervalLength;
+    private final DoubleBuffer coefficients;
+
+    private ChebyshevEphemeris(int bodyCount, int degree, int intervalCount, double startTime, double intervalLength, DoubleBuffer coefficients) {
+        this.bodyCount = bodyCount;
+        this.degree = degree;
+        this.intervalCount = intervalCount;
+        this.startTime = startTime;
+        this.intervalLength = intervalLength;
+        this.coefficients = coefficients;
+    }
+
+    /**
+     * Method that opens an ephemeris file written by fit, by memory-mapping it.
+     * @param file Path is the file to open.
+     * @return ChebyshevEphemeris the ephemeris in the file.
+     * @throws IOException if the file cannot be read, or is not an ephemeris file.
+     */
+    public static ChebyshevEphemeris open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an ephemeris file!");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(file + " has version " + buffer.getInt(4) + ", but only version " + VERSION + " can be read!");
+            }
+            int bodyCount = buffer.getInt(8);
+            int degree = buffer.getInt(12);
+            int intervalCount = buffer.getInt(16);
+            double startTime = buffer.getDouble(20);
+            double intervalLength = buffer.getDouble(28);
+
+            long expected = HEADER_BYTES + (long) intervalCount * bodyCount * 3 * (degree + 1) * Double.BYTES;
+            if (buffer.capacity() != expected) {
+                throw new IOException(file + " should be " + expected + " bytes, but is " + buffer.capacity() + " bytes!");
+            }
+            buffer.position(HEADER_BYTES);
+            return new ChebyshevEphemeris(bodyCount, degree, intervalCount, startTime, intervalLength, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+        }
+    }
+
+    /**
+     * Method that fits the positions given by the source to Chebyshev polynomials and writes them to the given file. The
+     *  source is placed at the Chebyshev nodes of every interval, one interval after the other, so any source that can
+     *  jump to any time works.
+     * @param source PositionSource is what calculates the positions of the bodies.
+     * @param startTime double is the first time covered, in the time unit of the source.
+     * @param intervalLength double is how much time each polynomial covers, in the time unit of the source.
+     * @param intervalCount int is the amount of intervals, one after the other, to cover.
+     * @param degree int is the degree of the polynomials. Higher is more precise, but makes the file bigger.
+     * @param file Path is the file to write to. Is overwritten if it already exists.
+     * @return double the biggest distance found between the fitted and the actual position, checked halfway in between
+     *  every two nodes of every interval.
+     * @throws IOException if the file cannot be written.
+     */
+    public static double fit(PositionSource source, double startTime, double intervalLength, int intervalCount, int degree, Path file) throws IOException {
+        if (!(intervalLength > 0)) throw new IllegalArgumentException("The interval length must be positive!");
+        if (intervalCount < 1) throw new IllegalArgumentException("At least one interval must be fitted!");
+        if (degree < 0) throw new IllegalArgumentException("The degree cannot be negative!");
+
+        int bodyCount = source.size();
+        int nodes = degree + 1;
+
+        // The samples of every body at every node of the current interval, ordered by body, then axis, then node.
+        double[] samples = new double[bodyCount * 3 * nodes];
+        double[] intervalCoefficients = new double[bodyCount * 3 * nodes];
+        ByteBuffer out = ByteBuffer.allocate(intervalCoefficients.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        double maxError = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(bodyCount).putInt(degree).putInt(intervalCount);
+            header.putDouble(startTime).putDouble(intervalLength);
+            header.flip();
+            writeFully(channel, header);
+
+            for (int interval = 0; interval < intervalCount; interval++) {
+                double intervalStart = startTime + interval * intervalLength;
+
+                for (int k = 0; k < nodes; k++) {
+                    source.update(toTime(intervalStart, intervalLength, Math.cos(Math.PI * (k + 0.5) / nodes)));
+                    for (int body = 0; body < bodyCount; body++) {
+                        int base = body * 3 * nodes;
+                        samples[base + k] = source.getX(body);
+                        samples[base + nodes + k] = source.getY(body);
+                        samples[base + 2 * nodes + k] = source.getZ(body);
+                    }
+                }
+
+                // The coefficients follow from the samples at the nodes with a discrete cosine transform.
+                for (int series = 0; series < bodyCount * 3; series++) {
+                    int base = series * nodes;
+                    for (int j = 0; j < nodes; j++) {
+                        double sum = 0;
+                        for (int k = 0; k < nodes; k++) {
+                            sum += samples[base + k] * Math.cos(Math.PI * j * (k + 0.5) / nodes);
+                        }
+                        intervalCoefficients[base + j] = ((j == 0) ? 1.0 : 2.0) * sum / nodes;
+                    }
+                }
+
+                // Check how far off the fit is halfway in between the nodes and at both ends of the interval, which
+                //  lie outside the outermost nodes, as that is where it is furthest off.
+                for (int k = 0; k <= nodes; k++) {
+                    double x = Math.cos(Math.PI * k / nodes);
+                    source.update(toTime(intervalStart, intervalLength, x));
+                    for (int body = 0; body < bodyCount; body++) {
+                        int base = body * 3 * nodes;
+                        double dx = clenshaw(intervalCoefficients, base, nodes, x) - source.getX(body);
+                        double dy = clenshaw(intervalCoefficients, base + nodes, nodes, x) - source.getY(body);
+                        double dz = clenshaw(intervalCoefficients, base + 2 * nodes, nodes, x) - source.getZ(body);
+                        maxError = Math.max(maxError, Math.sqrt(dx * dx + dy * dy + dz * dz));
+                    }
+                }
+
+                out.clear();
+                out.asDoubleBuffer().put(intervalCoefficients);
+                writeFully(channel, out);
+            }
+        }
+        return maxError;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Helper method that turns a point on the interval from -1 to 1 into the time it stands for.
+     */
+    private static double toTime(double intervalStart, double intervalLength, double x) {
+        return intervalStart + (x + 1.0) * 0.5 * intervalLength;
+    }
+
+    /**
+     * Helper method that evaluates a Chebyshev series with Clenshaw's recurrence.
+     * @param c double[] holds the coefficients, from the lowest degree up.
+     * @param offset int is where the series starts in c.
+     * @param count int is the amount of coefficients in the series.
+     * @param x double is the point to evaluate at, from -1 to 1.
+     */
+    private static double clenshaw(double[] c, int offset, int count, double x) {
+        double b1 = 0, b2 = 0;
+        for (int j = count - 1; j >= 1; j--) {
+            double b = 2.0 * x * b1 - b2 + c[offset + j];
+            b2 = b1;
+            b1 = b;
+        }
+        return x * b1 - b2 + c[offset];
+    }
+
+    private double clenshaw(int offset, double x) {
+        double b1 = 0, b2 = 0;
+        for (int j = degree; j >= 1; j--) {
+            double b = 2.0 * x * b1 - b2 + coefficients.get(offset + j);
+            b2 = b1;
+            b1 = b;
+        }
+        return x * b1 - b2 + coefficients.get(offset);
+    }
+
+    public int getBodyCount() { return bodyCount; }
+    public int getDegree() { return degree; }
+    public double getStartTime() { return startTime; }
+    public double getEndTime() { return startTime + intervalCount * intervalLength; }
+
+    /**
+     * Method that checks if the given time is covered by the ephemeris.
+     * @param time double is the time to check, in the time unit of the source it was fitted from.
+     * @return boolean true if positions can be looked up for that time.
+     */
+    public boolean covers(double time) {
+        return time >= startTime && time <= getEndTime();
+    }
+
+    /**
+     * Method that looks up where the given body is at the given time.
+     * @param body int is the index the body had in the source the ephemeris was fitted from.
+     * @param time double is the time to look up. Must be covered by the ephemeris.
+     * @param out double[] is where the x, y & z of the body are written to.
+     */
+    public void getPosition(int body, double time, double[] out) {
+        int offset = offsetOf(body, time);
+        double x = localTime(time);
+        int nodes = degree + 1;
+        out[0] = clenshaw(offset, x);
+        out[1] = clenshaw(offset + nodes, x);
+        out[2] = clenshaw(offset + 2 * nodes, x);
+    }
+
+    /**
+     * Method that moves every body in the given store to where the ephemeris says it is at the given time. The store
+     *  must hold the same bodies, in the same order, as the source the ephemeris was fitted from.
+     * @param store BodyStore is the store to place the bodies of.
+     * @param time double is the time to look up. Must be covered by the ephemeris.
+     */
+    public void apply(BodyStore store, double time) {
+        if (store.size() != bodyCount) {
+            throw new IllegalArgumentException("The store holds " + store.size() + " bodies, but the ephemeris " + bodyCount + "!");
+        }
+        int offset = offsetOf(0, time);
+        double x = localTime(time);
+        int nodes = degree + 1;
+        for (int body = 0; body < bodyCount; body++) {
+            store.setPosition(body, clenshaw(offset, x), clenshaw(offset + nodes, x), clenshaw(offset + 2 * nodes, x));
+            offset += 3 * nodes;
+        }
+    }
+
+    /**
+     * Helper method that returns the interval the given time is in. The very end of the last interval belongs to it.
+     */
+    private int intervalOf(double time) {
+        if (!covers(time)) {
+            throw new IllegalArgumentException("The time " + time + " is not between " + startTime + " and " + getEndTime() + "!");
+        }
+        return Math.min((int) ((time - startTime) / intervalLength), intervalCount - 1);
+    }
+
+    private int offsetOf(int body, double time) {
+        return ((intervalOf(time) * bodyCount) + body) * 3 * (degree + 1);
+    }
+
+    /**
+     * Helper method that turns the given time into a point on the interval from -1 to 1 of the interval it is in.
+     */
+    private double localTime(double time) {
+        double intervalStart = startTime + intervalOf(time) * intervalLength;
+        return (2.0 * (time - intervalStart) / intervalLength) - 1.0;
+    }
+
+    /**
+     * Precomputes the Solar System of the simulation to an ephemeris file, which can then be given to the simulation.
+     * It takes the following arguments, in this order:
+     *  - The file to write to.
+     *  - The amount of simulated years to cover, from the start of the simulation. Defaults to 10.
+     *  - The amount of simulated days each polynomial covers. Defaults to 0.5.
+     *  - The degree of the polynomials. Defaults to 12.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: ChebyshevEphemeris <file> [years] [days per interval] [degree]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        double years = (args.length > 1) ? Double.parseDouble(args[1]) : 10.0;
+        double intervalDays = (args.length > 2) ? Double.parseDouble(args[2]) : 0.5;
+        int degree = (args.length > 3) ? Integer.parseInt(args[3]) : 12;
+
+        BodyStore store = new BodyStore();
+        SolarSystemCourseWork2.createSolarSystem(store, null);
+
+        double intervalMillis = intervalDays * 86400000.0;
+        int intervalCount = (int) Math.ceil((years * 365.25) / intervalDays);
+        long start = System.nanoTime();
+        double maxError = fit(store, 0, intervalMillis, intervalCount, degree, file);
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+        System.out.println("Fitted " + store.size() + " bodies over " + intervalCount + " intervals in " + seconds + " s.");
+        System.out.println("Biggest error: " + maxError + " simulation units.");
+    }
+}
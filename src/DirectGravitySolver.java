@@ -0,0 +1,95 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that calculates the pull on every body by adding up the pull of every other body on it directly. This is
+ *  exact, but the cost grows with the square of the amount of bodies, so it is only usable up to a few thousand bodies.
+ * The pull on each body is calculated in chunks on a ForkJoinPool, each chunk only writing to the bodies it owns, and
+ *  the inner loop has no branches so the JIT can vectorize it.
+ */
+public class DirectGravitySolver implements GravitySolver {
+    // Below this amount of bodies, the pull is calculated on the calling thread, as handing it over costs more.
+    private static final int PARALLEL_THRESHOLD = 512;
+    private static final int CHUNK_SIZE = 128;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Method that creates a solver that uses the given pool for big systems.
+     * @param pool ForkJoinPool is the pool to use. Give null to always calculate on the calling thread.
+     */
+    public DirectGravitySolver(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void computeAccelerations(int size, double[] x, double[] y, double[] z, double[] mass, double g, double softeningSquared, double[] ax, double[] ay, double[] az) {
+        if (size < PARALLEL_THRESHOLD || pool == null) {
+            computeAccelerations(0, size, size, x, y, z, mass, g, softeningSquared, ax, ay, az);
+        } else {
+            pool.invoke(new Chunk(0, size, size, x, y, z, mass, g, softeningSquared, ax, ay, az));
+        }
+    }
+
+    /**
+     * Helper method that calculates the pull on the bodies from the given index up to (not including) the other one, by
+     *  adding up the pull of every body of the system on them. Only writes to the bodies in the range. The softening
+     *  makes the pull of a body on itself zero, without having to check for it.
+     */
+    private static void computeAccelerations(int from, int to, int size, double[] x, double[] y, double[] z, double[] mass, double g, double softeningSquared, double[] ax, double[] ay, double[] az) {
+        for (int i = from; i < to; i++) {
+            double xi = x[i], yi = y[i], zi = z[i];
+            double sumX = 0, sumY = 0, sumZ = 0;
+            for (int j = 0; j < size; j++) {
+                double dx = x[j] - xi;
+                double dy = y[j] - yi;
+                double dz = z[j] - zi;
+                double distSquared = dx * dx + dy * dy + dz * dz + softeningSquared;
+                double invDist = 1.0 / Math.sqrt(distSquared);
+                double strength = mass[j] * invDist * invDist * invDist;
+                sumX += dx * strength;
+                sumY += dy * strength;
+                sumZ += dz * strength;
+            }
+            ax[i] = g * sumX;
+            ay[i] = g * sumY;
+            az[i] = g * sumZ;
+        }
+    }
+
+    /**
+     * Task that calculates the pull on a range of bodies, splitting itself in half until the range is small enough.
+     */
+    @SuppressWarnings("serial")
+    private static class Chunk extends RecursiveAction {
+        private final int from, to, size;
+        private final double[] x, y, z, mass, ax, ay, az;
+        private final double g, softeningSquared;
+
+        private Chunk(int from, int to, int size, double[] x, double[] y, double[] z, double[] mass, double g, double softeningSquared, double[] ax, double[] ay, double[] az) {
+            this.from = from;
+            this.to = to;
+            this.size = size;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.mass = mass;
+            this.g = g;
+            this.softeningSquared = softeningSquared;
+            this.ax = ax;
+            this.ay = ay;
+            this.az = az;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                computeAccelerations(from, to, size, x, y, z, mass, g, softeningSquared, ax, ay, az);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Chunk(from, middle, size, x, y, z, mass, g, softeningSquared, ax, ay, az),
+                        new Chunk(middle, to, size, x, y, z, mass, g, softeningSquared, ax, ay, az));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import com.sun.j3d.utils.image.TextureLoader;
+
+import javax.media.j3d.Texture;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Class that draws every printable ASCII character of a font once into a single texture, so any amount of text can be
+ *  drawn as quads that each show their part of that one texture. The characters are drawn in white, so the quads can
+ *  give them any colour. Every character is as high as a line of the font and as wide as it moves the text along.
+ */
+public class GlyphAtlas {
+    private static final char FIRST_CHAR = 32;
+    private static final char LAST_CHAR = 126;
+    // The width of the texture, the characters are placed in rows that fit in it.
+    private static final int ATLAS_WIDTH = 512;
+    // The empty space around every character, so smaller mip levels do not blend in their neighbours.
+    private static final int PADDING = 4;
+
+    private final Texture texture;
+    // The part of the texture every character covers, and its width relative to the height of a line.
+    private final float[] left, bottom, right, top, widths;
+
+    /**
+     * Method that draws the characters of the given font into a new texture.
+     * @param font Font is the font to draw the characters in. Its size is the height they have in the texture.
+     */
+    public GlyphAtlas(Font font) {
+        int count = LAST_CHAR - FIRST_CHAR + 1;
+        left = new float[count];
+        bottom = new float[count];
+        right = new float[count];
+        top = new float[count];
+        widths = new float[count];
+
+        // Measure the characters first, to know how high the texture has to be.
+        Graphics2D measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        measure.setFont(font);
+        FontMetrics metrics = measure.getFontMetrics();
+        measure.dispose();
+        int lineHeight = metrics.getAscent() + metrics.getDescent();
+        int cellHeight = lineHeight + 2 * PADDING;
+
+        int[] cellX = new int[count];
+        int[] cellY = new int[count];
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < count; i++) {
+            int cellWidth = metrics.charWidth((char)(FIRST_CHAR + i)) + 2 * PADDING;
+            if (x + cellWidth > ATLAS_WIDTH) {
+                x = 0;
+                y += cellHeight;
+            }
+            cellX[i] = x;
+            cellY[i] = y;
+            x += cellWidth;
+        }
+        int height = Integer.highestOneBit(y + cellHeight);
+        if (height < y + cellHeight) {
+            height *= 2;
+        }
+
+        BufferedImage image = new BufferedImage(ATLAS_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < count; i++) {
+            char c = (char)(FIRST_CHAR + i);
+            int charWidth = metrics.charWidth(c);
+            g.drawString(String.valueOf(c), cellX[i] + PADDING, cellY[i] + PADDING + metrics.getAscent());
+
+            // The top row of the image is the top of the texture (t = 1).
+            left[i] = (float)(cellX[i] + PADDING) / ATLAS_WIDTH;
+            right[i] = (float)(cellX[i] + PADDING + charWidth) / ATLAS_WIDTH;
+            top[i] = 1.0f - (float)(cellY[i] + PADDING) / height;
+            bottom[i] = 1.0f - (float)(cellY[i] + PADDING + lineHeight) / height;
+            widths[i] = (float)charWidth / lineHeight;
+        }
+        g.dispose();
+
+        TextureLoader loader = new TextureLoader(image, "RGBA", TextureLoader.GENERATE_MIPMAP);
+        texture = loader.getTexture();
+        texture.setMinFilter(Texture.MULTI_LEVEL_LINEAR);
+        texture.setMagFilter(Texture.BASE_LEVEL_LINEAR);
+        texture.setBoundaryModeS(Texture.CLAMP_TO_EDGE);
+        texture.setBoundaryModeT(Texture.CLAMP_TO_EDGE);
+    }
+
+    /**
+     * Helper method that gives the index of the given character, where characters outside of printable ASCII are shown
+     *  as a question mark.
+     */
+    private static int index(char c) {
+        return (c >= FIRST_CHAR && c <= LAST_CHAR) ? c - FIRST_CHAR : '?' - FIRST_CHAR;
+    }
+
+    public Texture getTexture() { return texture; }
+
+    // The part of the texture the given character covers.
+    public float getLeft(char c) { return left[index(c)]; }
+    public float getBottom(char c) { return bottom[index(c)]; }
+    public float getRight(char c) { return right[index(c)]; }
+    public float getTop(char c) { return top[index(c)]; }
+
+    // The width of the given character relative to the height of a line.
+    public float getWidth(char c) { return widths[index(c)]; }
+}
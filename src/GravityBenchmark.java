@@ -0,0 +1,111 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Application file that compares the Barnes-Hut solver with summing up every pair directly, for a growing amount of
+ *  bodies. For every amount it prints how long each solver takes to calculate the pull on all bodies once and how far
+ *  the pull found by Barnes-Hut is off from the exact pull. The bodies are spread out like a star cluster (a Plummer
+ *  sphere), so some areas are much more crowded than others.
+ * It takes the following (optional) arguments, in this order:
+ *  - The opening angle of the Barnes-Hut solver. Defaults to 0.5.
+ *  - The biggest amount of bodies to time the direct sum for, as it gets very slow. Defaults to 32000.
+ *  - The amounts of bodies to test, separated by commas. Defaults to 1000,4000,16000,64000,256000.
+ */
+public class GravityBenchmark {
+    // The amount of bodies the error of Barnes-Hut is checked on, as finding the exact pull on all bodies takes too long.
+    private static final int ERROR_SAMPLES = 1000;
+
+    public static void main(String[] args) {
+        double theta = (args.length > 0) ? Double.parseDouble(args[0]) : 0.5;
+        int maxDirect = (args.length > 1) ? Integer.parseInt(args[1]) : 32000;
+        String[] counts = ((args.length > 2) ? args[2] : "1000,4000,16000,64000,256000").split(",");
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        DirectGravitySolver direct = new DirectGravitySolver(pool);
+        BarnesHutSolver barnesHut = new BarnesHutSolver(theta, pool);
+        double softeningSquared = 1e-6;
+
+        System.out.println("Threads: " + pool.getParallelism() + ", theta: " + theta);
+        System.out.println(String.format("%10s %12s %12s %10s %14s %14s", "bodies", "direct (ms)", "B-H (ms)", "speedup", "RMS rel. err", "max rel. err"));
+        for (String count : counts) {
+            int n = Integer.parseInt(count.trim());
+            double[] x = new double[n], y = new double[n], z = new double[n], mass = new double[n];
+            createPlummerSphere(n, new Random(n), x, y, z, mass);
+            double[] ax = new double[n], ay = new double[n], az = new double[n];
+
+            double barnesHutMillis = time(barnesHut, n, x, y, z, mass, softeningSquared, ax, ay, az);
+
+            double directMillis = Double.NaN;
+            if (n <= maxDirect) {
+                double[] dx = new double[n], dy = new double[n], dz = new double[n];
+                directMillis = time(direct, n, x, y, z, mass, softeningSquared, dx, dy, dz);
+            }
+
+            // Compare against the exact pull on a sample of the bodies.
+            Random random = new Random(1);
+            double sumSquaredError = 0, maxError = 0;
+            int samples = Math.min(ERROR_SAMPLES, n);
+            for (int s = 0; s < samples; s++) {
+                int i = (samples == n) ? s : random.nextInt(n);
+                double ex = 0, ey = 0, ez = 0;
+                for (int j = 0; j < n; j++) {
+                    if (j == i) {
+                        continue;
+                    }
+                    double rx = x[j] - x[i], ry = y[j] - y[i], rz = z[j] - z[i];
+                    double invDist = 1.0 / Math.sqrt(rx * rx + ry * ry + rz * rz + softeningSquared);
+                    double strength = mass[j] * invDist * invDist * invDist;
+                    ex += rx * strength;
+                    ey += ry * strength;
+                    ez += rz * strength;
+                }
+                double error = Math.sqrt(square(ax[i] - ex) + square(ay[i] - ey) + square(az[i] - ez)) / Math.sqrt(ex * ex + ey * ey + ez * ez);
+                sumSquaredError += error * error;
+                maxError = Math.max(maxError, error);
+            }
+
+            System.out.println(String.format("%10d %12s %12.2f %10s %14.2e %14.2e", n,
+                    Double.isNaN(directMillis) ? "-" : String.format("%.2f", directMillis), barnesHutMillis,
+                    Double.isNaN(directMillis) ? "-" : String.format("%.1fx", directMillis / barnesHutMillis),
+                    Math.sqrt(sumSquaredError / samples), maxError));
+        }
+    }
+
+    /**
+     * Helper method that returns the average time in milliseconds the solver takes, after letting the JIT warm up.
+     */
+    private static double time(GravitySolver solver, int n, double[] x, double[] y, double[] z, double[] mass, double softeningSquared, double[] ax, double[] ay, double[] az) {
+        long budget = 2000000000L;
+        solver.computeAccelerations(n, x, y, z, mass, 1.0, softeningSquared, ax, ay, az);
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            solver.computeAccelerations(n, x, y, z, mass, 1.0, softeningSquared, ax, ay, az);
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < budget && runs < 20);
+        return elapsed / 1000000.0 / runs;
+    }
+
+    /**
+     * Helper method that spreads bodies of equal mass out like a star cluster, with a total mass of 1 and a scale of 1.
+     */
+    private static void createPlummerSphere(int n, Random random, double[] x, double[] y, double[] z, double[] mass) {
+        for (int i = 0; i < n; i++) {
+            // Pick the distance from the center so that the density falls off like in a Plummer sphere.
+            double radius = 1.0 / Math.sqrt(Math.pow(0.001 + 0.998 * random.nextDouble(), -2.0 / 3.0) - 1.0);
+            double cosPolar = 2.0 * random.nextDouble() - 1.0;
+            double sinPolar = Math.sqrt(1.0 - cosPolar * cosPolar);
+            double azimuth = 2.0 * Math.PI * random.nextDouble();
+            x[i] = radius * sinPolar * Math.cos(azimuth);
+            y[i] = radius * sinPolar * Math.sin(azimuth);
+            z[i] = radius * cosPolar;
+            mass[i] = 1.0 / n;
+        }
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Interface for the ways the bodies can be moved by the gravity they have on each other, like moving all of them
+ *  together in one system (NBodySystem) or moving every planet with its moons in a system of its own
+ *  (NestedGravitySystem). Time is in simulated milliseconds.
+ */
+public interface GravitySimulation {
+    /**
+     * Method that moves the bodies forward by the given amount of time. Takes at most a set amount of steps, so it can
+     *  stop short of the given time.
+     * @param millis double is the amount of simulated milliseconds to move forward.
+     * @return double the amount of simulated milliseconds the bodies actually moved forward.
+     */
+    double advance(double millis);
+
+    /**
+     * Method that writes the positions of the bodies into the store the simulation was created from.
+     * @param store BodyStore is the store the simulation was created from.
+     */
+    void writeTo(BodyStore store);
+
+    // The amount of simulated milliseconds moved forward since the simulation was created.
+    double getTimeMillis();
+    // The length of the next (outermost) step in simulated milliseconds.
+    double getStepMillis();
+    // How far the total energy has drifted from what it was at the start, relative to that start.
+    double getEnergyDrift();
+}
@@ -0,0 +1,16 @@
+/**
+ * Interface for the ways the pull of a set of bodies on each other can be calculated, like summing up the pull of every
+ *  body directly, or estimating the pull of far away groups of bodies at once.
+ */
+public interface GravitySolver {
+    /**
+     * Method that calculates the pull on every body by all the other bodies.
+     * @param size int is the amount of bodies. The arrays can be longer than this, the rest is ignored.
+     * @param x double[] holds the x-positions of the bodies. The same goes for y & z.
+     * @param mass double[] holds the masses of the bodies.
+     * @param g double is the gravitational constant in the units of the positions and masses.
+     * @param softeningSquared double is added to the square of every distance, so close bodies are not flung away.
+     * @param ax double[] is where the acceleration in x of every body is written to. The same goes for ay & az.
+     */
+    void computeAccelerations(int size, double[] x, double[] y, double[] z, double[] mass, double g, double softeningSquared, double[] ax, double[] ay, double[] az);
+}
@@ -0,0 +1,72 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Application file that runs the orbital simulation without drawing anything, so it can be run on a machine without a
+ *  display, or to measure how fast the simulation itself is. It never touches StdDraw3D, so no window is ever opened.
+ * It takes the following (optional) arguments, in this order:
+ *  - The amount of steps to run. Defaults to 1000000.
+ *  - The amount of extra moons to add around the planets, to simulate a bigger system. Defaults to 0.
+ *  - The amount of simulated milliseconds per step. Defaults to one minute.
+ *  - "parallel" to update the bodies over all cores instead of in a single pass.
+ * When done, it prints how many body-steps per second were run and where the Earth ended up.
+ *
+ * @author Yoran Kerbusch (EHU Student 24143341)
+ * Made for CIS2166 Computer Graphics & Modelling Coursework 2 (2018-2019)
+ */
+public class HeadlessSimulation {
+    public static void main(String[] args) {
+        long steps = (args.length > 0) ? Long.parseLong(args[0]) : 1000000L;
+        int extraMoons = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+        double stepMillis = (args.length > 2) ? Double.parseDouble(args[2]) : 60000.0;
+        boolean parallel = (args.length > 3) && args[3].equalsIgnoreCase("parallel");
+
+        BodyStore store = new BodyStore();
+        Body sun = SolarSystemCourseWork2.createSolarSystem(store, null);
+        Body earth = sun.getChild(2);
+        addExtraMoons(sun, extraMoons);
+
+        // Warm up first, so the measurement is not of the code still being compiled.
+        long warmUpSteps = Math.min(steps, 10000L);
+        run(store, warmUpSteps, stepMillis, parallel);
+
+        long start = System.nanoTime();
+        run(store, steps, stepMillis, parallel);
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+        double bodySteps = (double) steps * store.size();
+        System.out.println("Bodies: " + store.size() + ", steps: " + steps + ", time: " + seconds + " s");
+        System.out.println("Body-steps per second: " + (long) (bodySteps / seconds));
+        System.out.println("Simulated days: " + (long) ((steps * stepMillis) / 86400000.0));
+        System.out.println("Earth: (" + earth.getX() + ", " + earth.getY() + ", " + earth.getZ() + ")");
+    }
+
+    /**
+     * Helper method that runs the given amount of steps from the start of the simulation.
+     */
+    private static void run(BodyStore store, long steps, double stepMillis, boolean parallel) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (long step = 1; step <= steps; step++) {
+            double simTimeMillis = step * stepMillis;
+            if (parallel) {
+                store.updateParallel(simTimeMillis, pool);
+            } else {
+                store.update(simTimeMillis);
+            }
+        }
+    }
+
+    /**
+     * Helper method that spreads the given amount of small moons over the planets of the Sun. The same moons are created
+     *  every run, so runs can be compared with each other.
+     */
+    private static void addExtraMoons(Body sun, int amount) {
+        Random random = new Random(42);
+        for (int i = 0; i < amount; i++) {
+            Body planet = sun.getChild(i % sun.getNumChildren());
+            double orbit = 2.0 + (random.nextDouble() * 20.0);
+            new Body(planet.getStore(), "Moon " + i, 100 + (random.nextDouble() * 1000), random.nextDouble() * 10, 0,
+                    1 + (random.nextDouble() * 500), 1 + (random.nextDouble() * 100), planet, orbit, orbit * (1.0 + (random.nextDouble() * 0.1)));
+        }
+    }
+}
@@ -5,30 +5,33 @@ public class KeplerBodyTest {
     private final KeplerBodyTest parent;
 
     private final double semimajorAxis, inclination, obliquity, radius, equatorRotationDegrees, eccentricity, eclipticLongtitude, omegaPerihelion;
-    private final double degreePerMs, meanAnomalyJ2000;
-    private double distParent;
-    private long timeInMs;
+    private final double degreePerDay, meanAnomalyJ2000;
+    // The index of this body in the propagator of the simulation, which places it on its orbit.
+    private final KeplerPropagator propagator;
+    private final int index;
 
     private final ArrayList<KeplerBodyTest> children;
+    // The mass in kilograms, which decides how fast the children orbit. Bodies orbiting the root orbit the Sun.
+    private double mass = 0;
 
     public KeplerBodyTest(double diameter, double hoursFullEquatorRotation, double obliquity, KeplerBodyTest parent, double perihelion, double eccentricity, double omegaPerihelion, double eclipticLongtitude, double inclination, double meanAnomalyJ2000) {
-        radius = (diameter / 149598000.0) / 2.0;
+        radius = (100.0 * (KeplerSolarSystemTest.pixelsPerAU * (diameter / 149598000.0))) / 2.0;
         equatorRotationDegrees = calculateRotationDegree(hoursFullEquatorRotation);
         this.obliquity = obliquity;
         this.eccentricity = eccentricity;
-        semimajorAxis = perihelion / (1.0 - eccentricity);
+        semimajorAxis = (perihelion / 149.598) / (1.0 - eccentricity);
         this.inclination = inclination;
         this.eclipticLongtitude = eclipticLongtitude;
         this.omegaPerihelion = omegaPerihelion;
         this.meanAnomalyJ2000 = meanAnomalyJ2000;
-//        degreePerMs = (.9856076686 / Math.pow(semimajorAxis, (3 / 2))) / 86400000.0;
-        degreePerMs = .9856076686 / Math.pow(semimajorAxis, (3.0 / 2.0));
+        degreePerDay = calculateMeanMotion(parent, semimajorAxis);
 
         this.parent = parent;
         children = new ArrayList<>();
+        propagator = KeplerSolarSystemTest.propagator;
+        index = addToPropagator();
 
         planet = StdDraw3D.sphere(0, 0, 0, radius, -90, obliquity, 0);
-        timeInMs = System.currentTimeMillis();
         movePlanet();
         if (parent != null) {
             path = drawPath();
@@ -48,15 +51,14 @@ public class KeplerBodyTest {
         this.eclipticLongtitude = eclipticLongtitude;
         this.omegaPerihelion = omegaPerihelion;
         this.meanAnomalyJ2000 = meanAnomalyJ2000;
-        degreePerMs = (.9856076686 / Math.pow(semimajorAxis, (3.0 / 2.0))) / 86400000.0;
-//        degreePerMs = .9856076686 / Math.pow(semimajorAxis, (3.0 / 2.0));
+        degreePerDay = calculateMeanMotion(parent, semimajorAxis);
 
         this.parent = parent;
         children = new ArrayList<>();
+        propagator = KeplerSolarSystemTest.propagator;
+        index = addToPropagator();
 
         planet = StdDraw3D.sphere(0, 0, 0, radius, -90, obliquity, 0, textureURL);
-//        timeInMs = 1072915200 / 86400;
-        timeInMs = System.currentTimeMillis();
         movePlanet();
         if (parent != null) {
             path = drawPath();
@@ -66,6 +68,41 @@ public class KeplerBodyTest {
         }
     }
 
+    /**
+     * Helper method that adds this body to the propagator and places it where it is at the current simulated time.
+     * @return int the index the body got in the propagator.
+     */
+    private int addToPropagator() {
+        int index;
+        if (parent == null) {
+            index = propagator.addRoot(0, 0, 0);
+        } else {
+            index = propagator.addOrbiting(parent.index, semimajorAxis, eccentricity, inclination, eclipticLongtitude, omegaPerihelion, meanAnomalyJ2000, degreePerDay);
+        }
+        propagator.update(index, KeplerPropagator.daysSinceJ2000(KeplerSolarSystemTest.simTimeMillis));
+        return index;
+    }
+
+    /**
+     * Helper method that returns the mean motion of a body with the given semimajor axis around the given parent. Bodies
+     *  orbiting the root orbit the Sun, any others orbit their parent, which must have its mass set for that.
+     * @return double the mean motion in degrees per day.
+     */
+    private static double calculateMeanMotion(KeplerBodyTest parent, double semimajorAxis) {
+        if (parent == null || parent.parent == null) {
+            return KeplerPropagator.heliocentricMeanMotion(semimajorAxis);
+        }
+        if (!(parent.mass > 0)) {
+            throw new IllegalArgumentException("The mass of a body must be set before anything can orbit it!");
+        }
+        return KeplerPropagator.meanMotion(semimajorAxis, parent.mass);
+    }
+
+    public void setMass(double mass) {
+        if (!(mass > 0)) throw new IllegalArgumentException("The mass must be positive!");
+        this.mass = mass;
+    }
+
     public StdDraw3D.Vector3D getPosition() { return planet.getPosition(); }
 
     private double calculateRotationDegree(double hoursFullEquatorRotation) {
@@ -75,54 +112,22 @@ public class KeplerBodyTest {
     }
     public double getEquatorRotationDegrees() { return equatorRotationDegrees; }
 
+    /**
+     * Method that moves the planet to where the propagator last placed it and rotates it on its axis. The propagator
+     *  itself is updated once per frame by the simulation, before this is called on the sun.
+     */
     public void movePlanet() {
         // Rotate the planet around its own axis.
         planet.rotateRelative(0, equatorRotationDegrees, 0);
 
         if (parent != null) {
-            // 946684800 is the amount of seconds from Epoch 1970 till J2000 (1/1/2000 0:0:0 UTC).
-            System.out.println("Degrees per day: " + degreePerMs);
-            System.out.println("Time in days: " + timeInMs);
-            double meanAnomaly = meanAnomalyJ2000 + degreePerMs * ((timeInMs - (946684800.0 / 86400.0)));
-            while (meanAnomaly < 0.0) {
-                meanAnomaly += 360.0;
-            }
-            if (meanAnomaly > 360.0) {
-                meanAnomaly = meanAnomaly % 360.0;
-            }
-            System.out.println("Mean anomaly: " + meanAnomaly);
-
-            double meanAnomalyRadians = Math.toRadians(meanAnomaly);
-            System.out.println("Mean anomaly in radians: " + meanAnomalyRadians);
-            double eccentricAnomaly = meanAnomalyRadians + eccentricity * (180.0 / Math.PI) * Math.sin(meanAnomalyRadians) * (1.0 + eccentricity * Math.cos(meanAnomalyRadians));
-            System.out.println("Eccentric anomaly: " + eccentricAnomaly);
-
-            double xv = semimajorAxis * (Math.cos(eccentricAnomaly) - eccentricity);
-            System.out.println("xv: " + xv);
-            double yv = semimajorAxis * (Math.sqrt(1.0 - (eccentricity * eccentricity)) * Math.sin(eccentricAnomaly));
-            System.out.println("yv: " + yv);
-            double trueAnomaly = meanAnomalyRadians + Math.atan2(yv, xv);
-            System.out.println("True anomaly: " + trueAnomaly);
-            double special = semimajorAxis * (1.0 - (eccentricity * eccentricity));
-            System.out.println("a * (1 - e^2) = " + special);
-            distParent = special / (1.0 + eccentricity * Math.cos(trueAnomaly));
-            System.out.println("Distance from parent: " + distParent);
-            distParent = distParent * KeplerSolarSystemTest.pixelsPerAU;
-
-            double x = distParent * (Math.cos(eclipticLongtitude) * Math.cos(omegaPerihelion + trueAnomaly) - Math.sin(eclipticLongtitude) * Math.cos(inclination) * Math.sin(omegaPerihelion + trueAnomaly));
-            double y = distParent * (Math.cos(eclipticLongtitude) * Math.cos(omegaPerihelion + trueAnomaly) + Math.sin(eclipticLongtitude) * Math.cos(inclination) * Math.sin(omegaPerihelion + trueAnomaly));
-            double z = distParent * (Math.sin(inclination) * Math.sin(omegaPerihelion + trueAnomaly));
-
-            planet.setPosition((parent.getPosition().x + x), (parent.getPosition().y + y), z);
-            System.out.println("Position: " + planet.getPosition() + "\n");
-            timeInMs += KeplerSolarSystemTest.timeShiftMilliseconds * KeplerSolarSystemTest.timeAmplifier;
+            double pixelsPerAU = KeplerSolarSystemTest.pixelsPerAU;
+            planet.setPosition(propagator.getX(index) * pixelsPerAU, propagator.getY(index) * pixelsPerAU, propagator.getZ(index) * pixelsPerAU);
         }
 
-        // Then move every child this planet has as well.
-        if (children.size() > 0) {
-            for (KeplerBodyTest child : children) {
-                child.movePlanet();
-            }
+        // Then move every child this planet has as well. Loop by index, as an iterator would have to be allocated.
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).movePlanet();
         }
     }
 
@@ -131,29 +136,24 @@ public class KeplerBodyTest {
     }
 
     private StdDraw3D.Shape drawPath() {
-        // Calculate by the size of the path radius how many dots we want to draw. The smaller the radius, the less dots should be drawn.
-        int amountOfPoints = (int)(Math.round(2 * distParent));
+        // Calculate by the size of the orbit how many dots we want to draw. The smaller the orbit, the less dots should be drawn.
+        int amountOfPoints = Math.max(8, (int)(Math.round(2 * semimajorAxis * KeplerSolarSystemTest.pixelsPerAU)));
 
         StdDraw3D.Shape[] pathPoints = new StdDraw3D.Shape[amountOfPoints];
-        for (int i = 1; i <= amountOfPoints; i++) {
-            double angleRad = i * (Math.PI / (amountOfPoints / 2)); // Convert angle to radians
-            // Then for every point in numberOfPoints, calculate the X and Y values for each of the points.
-            double pointX = Math.cos(angleRad) * distParent - Math.sin(angleRad) * planet.getPosition().y;
-            double pointY = Math.sin(angleRad) * distParent + Math.cos(angleRad) * planet.getPosition().y;
-            double pointZ = 0;
-
-            pathPoints[i - 1] = StdDraw3D.point(pointX, pointY, pointZ);
+        double[] point = new double[3];
+        double pixelsPerAU = KeplerSolarSystemTest.pixelsPerAU;
+        for (int i = 0; i < amountOfPoints; i++) {
+            // Spread the dots evenly over the eccentric anomaly, which already includes the inclination of the orbit.
+            propagator.getOrbitPoint(index, i * ((2.0 * Math.PI) / amountOfPoints), point);
+            pathPoints[i] = StdDraw3D.point(point[0] * pixelsPerAU, point[1] * pixelsPerAU, point[2] * pixelsPerAU);
         }
 
-        // Combine all the dots together to get one shape: A circle of dots.
+        // Combine all the dots together to get one shape: An ellipse of dots.
         StdDraw3D.Shape path = StdDraw3D.combine(pathPoints);
-        // Now set the center of the circle of dots to be the center of the parent planet.
+        // Now set the center of the ellipse of dots to be the center of the parent planet.
         StdDraw3D.Vector3D parentPosition = parent.getPosition();
         path.setPosition(parentPosition.x, parentPosition.y, parentPosition.z);
 
-        // If the planet orbits at an angle around the parent, the path should show this.
-        if (inclination != 0) { path.rotate(0, -inclination, 0); }
-
         return path;
     }
 }
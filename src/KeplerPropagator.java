@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+/**
+ * Class that places bodies on their Kepler orbits from their orbital elements, for thousands of bodies per frame. Just
+ *  like the BodyStore, the elements of every body are kept in flat arrays of primitives and a body is nothing more than
+ *  an index into these arrays. Bodies are always added after their parent, so a single pass places every parent before
+ *  any of its children.
+ * For every body, everything that does not change over time is calculated once when it is added: the rotation from
+ *  the plane of its orbit to the ecliptic (already scaled by the size of the orbit) and its mean motion. Placing a body
+ *  then only needs its eccentric anomaly, which is found by solving Kepler's equation with Newton-Raphson until the
+ *  change is smaller than the tolerance.
+ * The values are stored in the following formats:
+ *  - semimajorAxis in AU, eccentricity without a unit (only elliptical orbits, so from 0 up to but not including 1).
+ *  - inclination, eclipticLongtitude (the longitude of the ascending node), omegaPerihelion (the argument of the
+ *     perihelion) & meanAnomalyJ2000 in degrees.
+ *  - the mean motion in degrees per day, time in days since J2000.
+ *  - positions in AU, relative to the ecliptic of the root the body (eventually) orbits.
+ */
+public class KeplerPropagator implements PositionSource {
+    // The mean motion in degrees per day of a body orbiting the Sun at 1 AU (the Gaussian gravitational constant).
+    public static final double DEGREES_PER_DAY_AT_1_AU = 0.9856076686;
+    // The mass of the Sun in kilograms, which DEGREES_PER_DAY_AT_1_AU holds for.
+    public static final double SUN_MASS_KG = 1.98892e30;
+    // The moment of J2000 (1/1/2000 12:00:00 TT) in milliseconds since Epoch 1970.
+    public static final long J2000_EPOCH_MILLIS = 946728000000L;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final double DEFAULT_TOLERANCE = 1e-12;
+    private static final int DEFAULT_MAX_ITERATIONS = 16;
+
+    private final double tolerance;
+    private final int maxIterations;
+
+    private int size = 0;
+    private int[] parent;
+
+    // The orbital elements that are still needed every update.
+    private double[] eccentricity, meanAnomalyJ2000, meanMotion;
+
+    // The rotation from the plane of the orbit to the ecliptic. P points to the perihelion and is scaled by the
+    //  semimajor axis, Q points 90 degrees further along the orbit and is scaled by the semiminor axis.
+    private double[] px, py, pz, qx, qy, qz;
+
+    // The values that change as the simulation runs.
+    private double[] posX, posY, posZ;
+
+    public KeplerPropagator() {
+        this(DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Method that creates a propagator that solves Kepler's equation to the given precision.
+     * @param tolerance double is the change in eccentric anomaly (in radians) below which the solution is good enough.
+     * @param maxIterations int is the most Newton-Raphson iterations to do per body, even if the tolerance is not reached.
+     */
+    public KeplerPropagator(double tolerance, int maxIterations) {
+        if (!(tolerance > 0)) throw new IllegalArgumentException("The tolerance must be positive!");
+        if (maxIterations < 1) throw new IllegalArgumentException("At least one iteration must be allowed!");
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+
+        parent = new int[DEFAULT_CAPACITY];
+        eccentricity = new double[DEFAULT_CAPACITY];
+        meanAnomalyJ2000 = new double[DEFAULT_CAPACITY];
+        meanMotion = new double[DEFAULT_CAPACITY];
+        px = new double[DEFAULT_CAPACITY];
+        py = new double[DEFAULT_CAPACITY];
+        pz = new double[DEFAULT_CAPACITY];
+        qx = new double[DEFAULT_CAPACITY];
+        qy = new double[DEFAULT_CAPACITY];
+        qz = new double[DEFAULT_CAPACITY];
+        posX = new double[DEFAULT_CAPACITY];
+        posY = new double[DEFAULT_CAPACITY];
+        posZ = new double[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Method that returns the mean motion of a body orbiting the Sun, following Kepler's third law.
+     * @param semimajorAxis double is the semimajor axis of the orbit in AU.
+     * @return double the mean motion in degrees per day.
+     */
+    public static double heliocentricMeanMotion(double semimajorAxis) {
+        return DEGREES_PER_DAY_AT_1_AU / Math.pow(semimajorAxis, 1.5);
+    }
+
+    /**
+     * Method that returns the mean motion of a body orbiting a parent of the given mass, following Kepler's third law.
+     *  The mass of the body itself is left out, as it is tiny compared to that of its parent.
+     * @param semimajorAxis double is the semimajor axis of the orbit in AU.
+     * @param parentMassKg double is the mass of the parent in kilograms.
+     * @return double the mean motion in degrees per day.
+     */
+    public static double meanMotion(double semimajorAxis, double parentMassKg) {
+        return heliocentricMeanMotion(semimajorAxis) * Math.sqrt(parentMassKg / SUN_MASS_KG);
+    }
+
+    /**
+     * Method that returns the amount of days between J2000 and the given moment.
+     * @param epochMillis double is the moment in milliseconds since Epoch 1970.
+     * @return double the amount of days since J2000, negative for moments before it.
+     */
+    public static double daysSinceJ2000(double epochMillis) {
+        return (epochMillis - J2000_EPOCH_MILLIS) / 86400000.0;
+    }
+
+    /**
+     * Method that adds a body without a parent. It stays at the given position.
+     * @return int the index of the new body.
+     */
+    public int addRoot(double x, double y, double z) {
+        int index = add(-1);
+        posX[index] = x;
+        posY[index] = y;
+        posZ[index] = z;
+        return index;
+    }
+
+    /**
+     * Method that adds a body orbiting the given parent, with the given orbital elements.
+     * @param parent int is the index of the parent of the body. Must already be added.
+     * @param semimajorAxis double is half the longest diameter of the orbit in AU.
+     * @param eccentricity double is how stretched the orbit is, from 0 (a circle) up to but not including 1.
+     * @param inclination double is the angle of the orbit with the ecliptic in degrees.
+     * @param eclipticLongtitude double is the longitude of the ascending node in degrees.
+     * @param omegaPerihelion double is the angle from the ascending node to the perihelion in degrees.
+     * @param meanAnomalyJ2000 double is the mean anomaly of the body at J2000 in degrees.
+     * @param degreesPerDay double is the mean motion of the body in degrees per day.
+     * @return int the index of the new body.
+     */
+    public int addOrbiting(int parent, double semimajorAxis, double eccentricity, double inclination, double eclipticLongtitude, double omegaPerihelion, double meanAnomalyJ2000, double degreesPerDay) {
+        if (parent < 0 || parent >= size) {
+            throw new IllegalArgumentException("The parent must be added before its children!");
+        }
+        if (!(eccentricity >= 0) || eccentricity >= 1) {
+            throw new IllegalArgumentException("Only elliptical orbits (0 <= eccentricity < 1) are supported!");
+        }
+        int index = add(parent);
+        this.eccentricity[index] = eccentricity;
+        this.meanAnomalyJ2000[index] = Math.toRadians(meanAnomalyJ2000);
+        this.meanMotion[index] = Math.toRadians(degreesPerDay);
+
+        double cosNode = Math.cos(Math.toRadians(eclipticLongtitude));
+        double sinNode = Math.sin(Math.toRadians(eclipticLongtitude));
+        double cosPeri = Math.cos(Math.toRadians(omegaPerihelion));
+        double sinPeri = Math.sin(Math.toRadians(omegaPerihelion));
+        double cosIncl = Math.cos(Math.toRadians(inclination));
+        double sinIncl = Math.sin(Math.toRadians(inclination));
+        double semiminorAxis = semimajorAxis * Math.sqrt(1.0 - (eccentricity * eccentricity));
+
+        px[index] = semimajorAxis * (cosNode * cosPeri - sinNode * sinPeri * cosIncl);
+        py[index] = semimajorAxis * (sinNode * cosPeri + cosNode * sinPeri * cosIncl);
+        pz[index] = semimajorAxis * (sinPeri * sinIncl);
+        qx[index] = semiminorAxis * (-cosNode * sinPeri - sinNode * cosPeri * cosIncl);
+        qy[index] = semiminorAxis * (-sinNode * sinPeri + cosNode * cosPeri * cosIncl);
+        qz[index] = semiminorAxis * (cosPeri * sinIncl);
+        return index;
+    }
+
+    /**
+     * Method that adds a body orbiting the given parent, with the mean motion following from the semimajor axis as if
+     *  it orbits the Sun.
+     */
+    public int addOrbiting(int parent, double semimajorAxis, double eccentricity, double inclination, double eclipticLongtitude, double omegaPerihelion, double meanAnomalyJ2000) {
+        return addOrbiting(parent, semimajorAxis, eccentricity, inclination, eclipticLongtitude, omegaPerihelion, meanAnomalyJ2000, heliocentricMeanMotion(semimajorAxis));
+    }
+
+    private int add(int parent) {
+        if (size == this.parent.length) {
+            grow();
+        }
+        int index = size++;
+        this.parent[index] = parent;
+        return index;
+    }
+
+    /**
+     * Helper method that doubles the capacity of all the arrays.
+     */
+    private void grow() {
+        int capacity = parent.length * 2;
+        parent = Arrays.copyOf(parent, capacity);
+        eccentricity = Arrays.copyOf(eccentricity, capacity);
+        meanAnomalyJ2000 = Arrays.copyOf(meanAnomalyJ2000, capacity);
+        meanMotion = Arrays.copyOf(meanMotion, capacity);
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        pz = Arrays.copyOf(pz, capacity);
+        qx = Arrays.copyOf(qx, capacity);
+        qy = Arrays.copyOf(qy, capacity);
+        qz = Arrays.copyOf(qz, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        posZ = Arrays.copyOf(posZ, capacity);
+    }
+
+    public int size() { return size; }
+    public int getParent(int index) { return parent[index]; }
+    public double getX(int index) { return posX[index]; }
+    public double getY(int index) { return posY[index]; }
+    public double getZ(int index) { return posZ[index]; }
+    public double getTolerance() { return tolerance; }
+
+    /**
+     * Method that places every body where it is at the given moment, in one pass.
+     * @param daysSinceJ2000 double is the amount of days since J2000.
+     */
+    @Override
+    public void update(double daysSinceJ2000) {
+        for (int i = 0; i < size; i++) {
+            update(i, daysSinceJ2000);
+        }
+    }
+
+    /**
+     * Method that places a single body where it is at the given moment. Its parent must already have been placed for
+     *  that same moment.
+     * @param index int is the index of the body to place.
+     * @param daysSinceJ2000 double is the amount of days since J2000.
+     */
+    public void update(int index, double daysSinceJ2000) {
+        int p = parent[index];
+        if (p < 0) {
+            // Bodies without a parent stay where they were put.
+            return;
+        }
+
+        double e = eccentricity[index];
+        double meanAnomaly = (meanAnomalyJ2000[index] + meanMotion[index] * daysSinceJ2000) % (2.0 * Math.PI);
+        double eccentricAnomaly = solveKepler(meanAnomaly, e);
+
+        // In the plane of the orbit the body is at (a * (cos(E) - e), b * sin(E)) from its parent, which P & Q turn into
+        //  a position on the ecliptic.
+        double alongP = Math.cos(eccentricAnomaly) - e;
+        double alongQ = Math.sin(eccentricAnomaly);
+        posX[index] = posX[p] + alongP * px[index] + alongQ * qx[index];
+        posY[index] = posY[p] + alongP * py[index] + alongQ * qy[index];
+        posZ[index] = posZ[p] + alongP * pz[index] + alongQ * qz[index];
+    }
+
+    /**
+     * Method that solves Kepler's equation (M = E - e * sin(E)) for the eccentric anomaly with Newton-Raphson.
+     * @param meanAnomaly double is the mean anomaly in radians.
+     * @param eccentricity double is the eccentricity of the orbit.
+     * @return double the eccentric anomaly in radians.
+     */
+    public double solveKepler(double meanAnomaly, double eccentricity) {
+        // Starting from M converges for every elliptical orbit, but starting from pi is much quicker for very eccentric ones.
+        double eccentricAnomaly = (eccentricity < 0.8) ? meanAnomaly : Math.PI;
+        for (int i = 0; i < maxIterations; i++) {
+            double step = (eccentricAnomaly - eccentricity * Math.sin(eccentricAnomaly) - meanAnomaly) / (1.0 - eccentricity * Math.cos(eccentricAnomaly));
+            eccentricAnomaly -= step;
+            if (Math.abs(step) < tolerance) {
+                break;
+            }
+        }
+        return eccentricAnomaly;
+    }
+
+    /**
+     * Method that gives the point on the orbit of the given body at the given eccentric anomaly, relative to its parent.
+     *  Useful to draw the orbit.
+     * @param index int is the index of the body. Must have a parent.
+     * @param eccentricAnomaly double is the eccentric anomaly of the point in radians.
+     * @param out double[] is where the x, y & z of the point are written to.
+     */
+    public void getOrbitPoint(int index, double eccentricAnomaly, double[] out) {
+        double alongP = Math.cos(eccentricAnomaly) - eccentricity[index];
+        double alongQ = Math.sin(eccentricAnomaly);
+        out[0] = alongP * px[index] + alongQ * qx[index];
+        out[1] = alongP * py[index] + alongQ * qy[index];
+        out[2] = alongP * pz[index] + alongQ * qz[index];
+    }
+}
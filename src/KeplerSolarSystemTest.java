@@ -9,6 +9,10 @@ public class KeplerSolarSystemTest {
     public static int timeAmplifier = 100000;
     // The amount of units within the scale, generally pixels, 1 AU (~149.6 * 10^6 km) spans in the simulation.
     public static final double pixelsPerAU = 20;
+    // Places all the bodies on their orbits. Updated once per frame, before the planets are moved to match.
+    public static final KeplerPropagator propagator = new KeplerPropagator();
+    // The moment that is being simulated, in milliseconds since Epoch 1970. Starts at the current real time.
+    public static double simTimeMillis = System.currentTimeMillis();
 
     public static void main(String[] args) {
         StdDraw3D.setCanvasSize(900, 900);
@@ -33,6 +37,8 @@ public class KeplerSolarSystemTest {
 //        KeplerBodyTest venus = new KeplerBodyTest(3, 3.4, 177.4, -5832.5, 224.7, sun, 7, "./assets/textures/2k_venus_atmosphere.jpg");
 //
         KeplerBodyTest earth = new KeplerBodyTest(1000000, 23.9, 23.4, sun, 147.1, 0.017, 288.064, 174.873, 0.0, 357.529, "./assets/textures/2k_earth_daymap.jpg");
+        // The Moon orbits the Earth, so how fast it goes follows from the mass of the Earth, not that of the Sun.
+        earth.setMass(5.972e24);
         KeplerBodyTest moon = new KeplerBodyTest(500000, 655.7, 6.7, earth, 0.363, 0.055, 318.150, 258.372, 5.1, 134.963, "./assets/textures/2k_moon.jpg");
 //
 //        KeplerBodyTest mars = new KeplerBodyTest(1.5, 1.9, 25.2, 24.6, 687.0, sun, 15, "./assets/textures/2k_mars.jpg");
@@ -43,7 +49,9 @@ public class KeplerSolarSystemTest {
 //        KeplerBodyTest pluto = new KeplerBodyTest(0.4, 17.2, 122.5, -153.3, 90560, sun, 450, "./assets/textures/2k_pluto.jpg");
 
         while (true) {
+            propagator.update(KeplerPropagator.daysSinceJ2000(simTimeMillis));
             sun.movePlanet();
+            simTimeMillis += (double) timeShiftMilliseconds * timeAmplifier;
 
             StdDraw3D.show(timeShiftMilliseconds);
         }
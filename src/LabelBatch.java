@@ -0,0 +1,236 @@
+import javax.media.j3d.Geometry;
+import javax.media.j3d.GeometryArray;
+import javax.media.j3d.GeometryUpdater;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Class that draws the names of all bodies using StdDraw3D, as quads that always face the camera and show their
+ *  characters from one shared GlyphAtlas. All names together are a single shape, read by Java 3D straight from the
+ *  arrays in here, so they cost one draw call and nothing is created when they move. Every name is kept at the same
+ *  height in pixels however far away its body is, centred just above the body.
+ * Names that would overlap a more important name on screen are faded out (see LabelPlacer), where the names of bodies
+ *  higher up in the hierarchy are more important, and of those the names of bigger bodies.
+ */
+public class LabelBatch implements GeometryUpdater {
+    // How far above the edge of the body the bottom of the name is, relative to the height of the name.
+    private static final double GAP = 0.2;
+    // How much of its opacity a name gains or loses every frame while it fades in or out.
+    private static final float FADE_STEP = 0.125f;
+
+    private final Body[] bodies;
+    // The first quad and the amount of quads (characters) of every name, and its width relative to its height.
+    private final int[] firstQuad, quadCount;
+    private final float[] labelWidths;
+    // Where every quad starts along its name and how wide it is, relative to the height of the name.
+    private final float[] quadX, quadWidths;
+    private final float[] coordinates, colors, texCoords;
+    private final GeometryArray quads;
+
+    private final LabelPlacer placer;
+    // The opacity every name has now, and where it is anchored with its distance in front of the camera this frame.
+    private final float[] opacity;
+    private final double[] anchorX, anchorY, anchorZ, depth;
+
+    // The camera and height of the names to place them for in the next updateData.
+    private final double[] camera = new double[12];
+    private double projectionScale;
+    private double pixels;
+
+    /**
+     * Method that creates the names of the bodies drawn by the given views, each in the colour of its body.
+     * @param views ArrayList<BodyView> is the views of the bodies to name.
+     * @param atlas GlyphAtlas is the characters to draw the names with.
+     * @param pixels double is how high the names are drawn in pixels.
+     */
+    public LabelBatch(ArrayList<BodyView> views, GlyphAtlas atlas, double pixels) {
+        this.pixels = pixels;
+        int labels = views.size();
+        bodies = new Body[labels];
+        firstQuad = new int[labels];
+        quadCount = new int[labels];
+        labelWidths = new float[labels];
+
+        int totalQuads = 0;
+        for (int i = 0; i < labels; i++) {
+            bodies[i] = views.get(i).getBody();
+            firstQuad[i] = totalQuads;
+            quadCount[i] = bodies[i].getName().length();
+            totalQuads += quadCount[i];
+        }
+
+        quadX = new float[totalQuads];
+        quadWidths = new float[totalQuads];
+        coordinates = new float[3 * 4 * totalQuads];
+        colors = new float[4 * 4 * totalQuads];
+        texCoords = new float[2 * 4 * totalQuads];
+        for (int i = 0; i < labels; i++) {
+            String name = bodies[i].getName();
+            Color color = views.get(i).getColor();
+            float x = 0;
+            for (int j = 0; j < name.length(); j++) {
+                char c = name.charAt(j);
+                int quad = firstQuad[i] + j;
+                quadX[quad] = x;
+                quadWidths[quad] = atlas.getWidth(c);
+                x += quadWidths[quad];
+
+                // The corners go counter clockwise from the bottom left, the same as in updateData.
+                setTexCoord(4 * quad, atlas.getLeft(c), atlas.getBottom(c));
+                setTexCoord(4 * quad + 1, atlas.getRight(c), atlas.getBottom(c));
+                setTexCoord(4 * quad + 2, atlas.getRight(c), atlas.getTop(c));
+                setTexCoord(4 * quad + 3, atlas.getLeft(c), atlas.getTop(c));
+                for (int k = 4 * quad; k < 4 * quad + 4; k++) {
+                    colors[4 * k] = color.getRed() / 255f;
+                    colors[4 * k + 1] = color.getGreen() / 255f;
+                    colors[4 * k + 2] = color.getBlue() / 255f;
+                    // Every name starts out transparent and fades in once it is placed.
+                    colors[4 * k + 3] = 0.0f;
+                }
+            }
+            labelWidths[i] = x;
+        }
+
+        // Place the names of bodies higher up in the hierarchy first, and of those the names of bigger bodies first.
+        Integer[] byImportance = new Integer[labels];
+        int[] hierarchyDepth = new int[labels];
+        for (int i = 0; i < labels; i++) {
+            byImportance[i] = i;
+            for (Body parent = bodies[i].getParent(); parent != null; parent = parent.getParent()) {
+                hierarchyDepth[i]++;
+            }
+        }
+        Arrays.sort(byImportance, (a, b) -> (hierarchyDepth[a] != hierarchyDepth[b])
+                ? Integer.compare(hierarchyDepth[a], hierarchyDepth[b])
+                : Double.compare(bodies[b].getRadius(), bodies[a].getRadius()));
+        int[] order = new int[labels];
+        for (int i = 0; i < labels; i++) {
+            order[i] = byImportance[i];
+        }
+        placer = new LabelPlacer(order);
+        opacity = new float[labels];
+        anchorX = new double[labels];
+        anchorY = new double[labels];
+        anchorZ = new double[labels];
+        depth = new double[labels];
+
+        quads = StdDraw3D.quadsByReference(coordinates, colors, texCoords, 4 * totalQuads, atlas.getTexture());
+    }
+
+    private void setTexCoord(int vertex, float s, float t) {
+        texCoords[2 * vertex] = s;
+        texCoords[2 * vertex + 1] = t;
+    }
+
+    /**
+     * Method that turns the names towards the camera, moves them to where their bodies are now and fades in or out the
+     *  ones that became free or started to overlap. Called every frame, so it does not allocate anything.
+     * @param cameraFrame double[] is the position and axes of the camera, see StdDraw3D.getCameraFrame.
+     * @param projectionScale double is the amount of pixels per unit of size per unit of distance, see
+     *                        StdDraw3D.getProjectionScale.
+     */
+    public void update(double[] cameraFrame, double projectionScale) {
+        System.arraycopy(cameraFrame, 0, camera, 0, camera.length);
+        this.projectionScale = projectionScale;
+        quads.updateData(this);
+    }
+
+    /**
+     * Method that Java 3D calls back from updateData, at a moment the coordinates can safely be written to.
+     */
+    @Override
+    public void updateData(Geometry geometry) {
+        place();
+
+        double rightX = camera[3], rightY = camera[4], rightZ = camera[5];
+        double upX = camera[6], upY = camera[7], upZ = camera[8];
+        for (int i = 0; i < bodies.length; i++) {
+            float target = placer.isShown(i) ? 1.0f : 0.0f;
+            float alpha = (opacity[i] < target) ? Math.min(target, opacity[i] + FADE_STEP) : Math.max(target, opacity[i] - FADE_STEP);
+            int first = firstQuad[i];
+            int last = first + quadCount[i];
+            if (alpha != opacity[i]) {
+                for (int v = 4 * first; v < 4 * last; v++) {
+                    colors[4 * v + 3] = alpha;
+                }
+                opacity[i] = alpha;
+            }
+
+            if (alpha == 0 || depth[i] <= 0) {
+                // Fully faded out or behind the camera, so every corner is put on the same spot, which draws nothing.
+                for (int v = 4 * first; v < 4 * last; v++) {
+                    setCorner(v, anchorX[i], anchorY[i], anchorZ[i]);
+                }
+                continue;
+            }
+
+            // The height of the name in units at the distance of the body.
+            double height = pixels * depth[i] / projectionScale;
+            double start = -0.5 * labelWidths[i] * height;
+            double bottom = GAP * height;
+            double top = bottom + height;
+            double x = anchorX[i], y = anchorY[i], z = anchorZ[i];
+            for (int quad = first; quad < last; quad++) {
+                double left = start + quadX[quad] * height;
+                double right = left + quadWidths[quad] * height;
+                int v = 4 * quad;
+                setCorner(v, x + rightX * left + upX * bottom, y + rightY * left + upY * bottom, z + rightZ * left + upZ * bottom);
+                setCorner(v + 1, x + rightX * right + upX * bottom, y + rightY * right + upY * bottom, z + rightZ * right + upZ * bottom);
+                setCorner(v + 2, x + rightX * right + upX * top, y + rightY * right + upY * top, z + rightZ * right + upZ * top);
+                setCorner(v + 3, x + rightX * left + upX * top, y + rightY * left + upY * top, z + rightZ * left + upZ * top);
+            }
+        }
+    }
+
+    /**
+     * Helper method that projects the anchor of every name onto the screen, then lets the placer decide which names are
+     *  shown this frame.
+     */
+    private void place() {
+        double rightX = camera[3], rightY = camera[4], rightZ = camera[5];
+        double upX = camera[6], upY = camera[7], upZ = camera[8];
+        double backX = camera[9], backY = camera[10], backZ = camera[11];
+        for (int i = 0; i < bodies.length; i++) {
+            Body body = bodies[i];
+            double radius = body.getRadius();
+            double x = body.getX() + upX * radius;
+            double y = body.getY() + upY * radius;
+            double z = body.getZ() + upZ * radius;
+            anchorX[i] = x;
+            anchorY[i] = y;
+            anchorZ[i] = z;
+
+            double dx = x - camera[0];
+            double dy = y - camera[1];
+            double dz = z - camera[2];
+            double d = -(dx * backX + dy * backY + dz * backZ);
+            depth[i] = d;
+            if (d <= 0) {
+                placer.exclude(i);
+                continue;
+            }
+            double scale = projectionScale / d;
+            double screenX = (dx * rightX + dy * rightY + dz * rightZ) * scale;
+            double screenY = (dx * upX + dy * upY + dz * upZ) * scale;
+            double halfWidth = 0.5 * labelWidths[i] * pixels;
+            double bottom = screenY + GAP * pixels;
+            placer.setBounds(i, screenX - halfWidth, bottom, screenX + halfWidth, bottom + pixels);
+        }
+        placer.place(StdDraw3D.getCanvasWidth(), StdDraw3D.getCanvasHeight());
+    }
+
+    private void setCorner(int vertex, double x, double y, double z) {
+        coordinates[3 * vertex] = (float)x;
+        coordinates[3 * vertex + 1] = (float)y;
+        coordinates[3 * vertex + 2] = (float)z;
+    }
+
+    public void setPixels(double pixels) {
+        this.pixels = pixels;
+    }
+
+    public double getPixels() {
+        return pixels;
+    }
+}
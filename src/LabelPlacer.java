@@ -0,0 +1,169 @@
+import java.util.Arrays;
+
+/**
+ * Class that decides which labels are shown, so that no two shown labels overlap on screen. The labels are placed one
+ *  by one in a fixed order of importance, and a label is only shown if it does not overlap one that was placed before
+ *  it. To find those quickly, every placed label is put in the cells it covers of a uniform grid over the screen, so a
+ *  label is only compared with the few labels placed in the cells it covers itself. Every cell holds a copy of the
+ *  bounds of its labels, so comparing them reads the memory of the cell only.
+ * Positions are in pixels from the middle of the screen, with y going up.
+ */
+public class LabelPlacer {
+    // The size of a cell of the grid in pixels, about the width of a short label and the height of any label.
+    private static final double CELL_WIDTH = 64.0;
+    private static final double CELL_HEIGHT = 16.0;
+
+    // The labels in the order they are placed in, most important first.
+    private final int[] order;
+    private final double[] left, bottom, right, top;
+    private final boolean[] excluded, shown;
+
+    // The first node of every cell, and for every node the bounds of the label it holds and the next node of the same
+    //  cell. -1 ends a cell. A label covering several cells has a node in each.
+    private int[] cellHead = new int[0];
+    private int[] nodeNext;
+    private double[] nodeLeft, nodeBottom, nodeRight, nodeTop;
+    private int nodes = 0;
+
+    /**
+     * Method that creates a placer for as many labels as the given order holds.
+     * @param order int[] is the index of every label, in the order of importance (most important first).
+     */
+    public LabelPlacer(int[] order) {
+        int count = order.length;
+        this.order = order.clone();
+        left = new double[count];
+        bottom = new double[count];
+        right = new double[count];
+        top = new double[count];
+        excluded = new boolean[count];
+        shown = new boolean[count];
+        int capacity = 4 * Math.max(1, count);
+        nodeNext = new int[capacity];
+        nodeLeft = new double[capacity];
+        nodeBottom = new double[capacity];
+        nodeRight = new double[capacity];
+        nodeTop = new double[capacity];
+    }
+
+    /**
+     * Method that sets where the given label would be drawn this frame.
+     * @param label int is the index of the label.
+     * @param left double is the x of the left edge in pixels.
+     * @param bottom double is the y of the bottom edge in pixels.
+     * @param right double is the x of the right edge in pixels.
+     * @param top double is the y of the top edge in pixels.
+     */
+    public void setBounds(int label, double left, double bottom, double right, double top) {
+        this.left[label] = left;
+        this.bottom[label] = bottom;
+        this.right[label] = right;
+        this.top[label] = top;
+        excluded[label] = false;
+    }
+
+    /**
+     * Method that keeps the given label from being shown this frame, like when it is behind the camera.
+     * @param label int is the index of the label.
+     */
+    public void exclude(int label) {
+        excluded[label] = true;
+    }
+
+    /**
+     * Method that decides which labels are shown on a screen of the given size, from the bounds set this frame. Does
+     *  not allocate anything unless the screen grew or more cells are covered than ever before.
+     * @param width int is the width of the screen in pixels.
+     * @param height int is the height of the screen in pixels.
+     */
+    public void place(int width, int height) {
+        int columns = Math.max(1, (int)Math.ceil(width / CELL_WIDTH));
+        int rows = Math.max(1, (int)Math.ceil(height / CELL_HEIGHT));
+        if (cellHead.length < columns * rows) {
+            cellHead = new int[columns * rows];
+        }
+        Arrays.fill(cellHead, 0, columns * rows, -1);
+        nodes = 0;
+        double halfWidth = width / 2.0;
+        double halfHeight = height / 2.0;
+
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            shown[i] = false;
+            if (excluded[i] || right[i] < -halfWidth || left[i] > halfWidth || top[i] < -halfHeight || bottom[i] > halfHeight) {
+                continue;
+            }
+
+            int firstColumn = cell(left[i] + halfWidth, CELL_WIDTH, columns);
+            int lastColumn = cell(right[i] + halfWidth, CELL_WIDTH, columns);
+            int firstRow = cell(bottom[i] + halfHeight, CELL_HEIGHT, rows);
+            int lastRow = cell(top[i] + halfHeight, CELL_HEIGHT, rows);
+            if (overlapsPlaced(i, firstColumn, lastColumn, firstRow, lastRow, columns)) {
+                continue;
+            }
+
+            shown[i] = true;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    addNode(row * columns + column, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method that checks whether the given label overlaps any label placed in the given cells.
+     */
+    private boolean overlapsPlaced(int i, int firstColumn, int lastColumn, int firstRow, int lastRow, int columns) {
+        double l = left[i], b = bottom[i], r = right[i], t = top[i];
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                for (int node = cellHead[row * columns + column]; node != -1; node = nodeNext[node]) {
+                    if (l < nodeRight[node] && r > nodeLeft[node] && b < nodeTop[node] && t > nodeBottom[node]) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void addNode(int cell, int label) {
+        if (nodes == nodeNext.length) {
+            nodeNext = Arrays.copyOf(nodeNext, 2 * nodes);
+            nodeLeft = Arrays.copyOf(nodeLeft, 2 * nodes);
+            nodeBottom = Arrays.copyOf(nodeBottom, 2 * nodes);
+            nodeRight = Arrays.copyOf(nodeRight, 2 * nodes);
+            nodeTop = Arrays.copyOf(nodeTop, 2 * nodes);
+        }
+        nodeLeft[nodes] = left[label];
+        nodeBottom[nodes] = bottom[label];
+        nodeRight[nodes] = right[label];
+        nodeTop[nodes] = top[label];
+        nodeNext[nodes] = cellHead[cell];
+        cellHead[cell] = nodes;
+        nodes++;
+    }
+
+    /**
+     * Helper method that gives the cell the given distance from the edge of the screen is in, where anything off the
+     *  screen counts as the nearest cell on it.
+     */
+    private static int cell(double pixels, double cellPixels, int cells) {
+        int cell = (int)(pixels / cellPixels);
+        return (cell < 0) ? 0 : Math.min(cell, cells - 1);
+    }
+
+    /**
+     * Method that tells whether the given label was shown by the last place.
+     * @param label int is the index of the label.
+     * @return boolean true if the label is shown, false if it is off the screen, excluded or overlaps a more important one.
+     */
+    public boolean isShown(int label) {
+        return shown[label];
+    }
+
+    public int size() {
+        return order.length;
+    }
+}
@@ -0,0 +1,585 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class that moves bodies by the gravity they have on each other, instead of along scripted orbits. Every body pulls on
+ *  every other body, so moons disturb each other, the Sun wobbles and bodies without an orbit (like a rogue planet or a
+ *  spacecraft) can be added.
+ * The bodies are moved with the leapfrog (kick-drift-kick, or velocity Verlet) integrator. It keeps the energy of the
+ *  system steady over very long runs, so orbits do not slowly spiral in or out like they would with simpler methods.
+ *  How far the energy has drifted from the start is checked every so often, to show how trustworthy the run still is.
+ * For close encounters, the system can instead be moved with the adaptive Dormand-Prince 5(4) integrator. It estimates
+ *  the error of every step by comparing a 5th and a 4th order result, then makes the next step shorter when bodies come
+ *  close to each other and longer when nothing is happening, keeping the error within the tolerance.
+ * Both integrators take at most a set amount of steps per call to advance, so one frame can never take forever. If
+ *  that is not enough to cover all the time asked for, advance says how far it did get.
+ * All values are kept in flat arrays of primitives. How the pull on each body is calculated is up to the GravitySolver:
+ *  by default every pair of bodies is summed up directly, which is exact but only usable up to a few thousand bodies.
+ *  Bigger systems can use the BarnesHutSolver instead.
+ * The values are in the same units as the BodyStore: positions in simulation units, time in simulated milliseconds and
+ *  masses in kilograms.
+ */
+public class NBodySystem implements GravitySimulation {
+    // The gravitational constant in m^3 / (kg * s^2).
+    public static final double G_SI = 6.674e-11;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int DEFAULT_ENERGY_CHECK_STEPS = 100;
+    private static final double DAY_MILLIS = 86400000.0;
+
+    // The Dormand-Prince 5(4) coefficients. Row s holds how much each earlier stage counts towards stage s. The last row
+    //  is also the 5th order result, so its stage is the pull at the end of the step, which the next step starts with.
+    private static final double[][] DP_A = {
+            {},
+            {1.0 / 5.0},
+            {3.0 / 40.0, 9.0 / 40.0},
+            {44.0 / 45.0, -56.0 / 15.0, 32.0 / 9.0},
+            {19372.0 / 6561.0, -25360.0 / 2187.0, 64448.0 / 6561.0, -212.0 / 729.0},
+            {9017.0 / 3168.0, -355.0 / 33.0, 46732.0 / 5247.0, 49.0 / 176.0, -5103.0 / 18656.0},
+            {35.0 / 384.0, 0.0, 500.0 / 1113.0, 125.0 / 192.0, -2187.0 / 6784.0, 11.0 / 84.0}
+    };
+    // The difference between the 5th and the 4th order result for every stage, which is the estimate of the error.
+    private static final double[] DP_E = {71.0 / 57600.0, 0.0, -71.0 / 16695.0, 71.0 / 1920.0, -17253.0 / 339200.0, 22.0 / 525.0, -1.0 / 40.0};
+    private static final int DP_STAGES = 7;
+
+    // The gravitational constant in the units of the simulation.
+    private final double g;
+    // Added to the square of every distance, so bodies that pass right through each other do not get flung away. Also
+    //  makes the pull of a body on itself zero, without having to check for it.
+    private final double softeningSquared;
+    private GravitySolver solver;
+
+    private int size = 0;
+    private double[] x, y, z, vx, vy, vz, ax, ay, az, mass;
+
+    // The largest step that is taken at once by leapfrog. Longer steps are split up into steps of at most this length.
+    private double maxStepMillis = 15.0 * 60000.0;
+    // The most steps (including steps that were thrown away by the adaptive integrator) taken per call to advance.
+    private int maxStepsPerAdvance = 100000;
+    private double timeMillis = 0;
+
+    // The adaptive integrator. The tolerance on the positions is in units, the one on the speeds is that same distance
+    //  per day. The step length is remembered between calls, as it is the best guess for the next step.
+    private boolean adaptive = false;
+    private double relativeTolerance = 1e-10, absoluteTolerance = 1e-9;
+    private double minAdaptiveStepMillis = 1000.0, maxAdaptiveStepMillis = DAY_MILLIS;
+    private double adaptiveStepMillis = Double.NaN;
+    private long rejectedSteps = 0;
+    // The derivatives at every stage (the speed for the positions, the pull for the speeds) and the state at a stage.
+    private double[][] stageX, stageY, stageZ, stageVX, stageVY, stageVZ;
+    private double[] tempX, tempY, tempZ, tempVX, tempVY, tempVZ;
+    private int energyCheckSteps = DEFAULT_ENERGY_CHECK_STEPS;
+    private int stepsSinceEnergyCheck = 0;
+    private boolean accelerationsValid = false;
+    private double initialEnergy = Double.NaN;
+    private volatile double energyDrift = 0;
+
+    /**
+     * Method that creates an empty system.
+     * @param metresPerUnit double is how many metres one simulation unit stands for.
+     * @param softening double is the distance in simulation units below which the pull of two bodies stops growing.
+     * @param pool ForkJoinPool is the pool to calculate the pull on big systems with.
+     */
+    public NBodySystem(double metresPerUnit, double softening, ForkJoinPool pool) {
+        this(metresPerUnit, softening, new DirectGravitySolver(pool));
+    }
+
+    /**
+     * Exactly the same as the NBodySystem above, only this one calculates the pull with the given solver.
+     */
+    public NBodySystem(double metresPerUnit, double softening, GravitySolver solver) {
+        // G is in m^3 / (kg * s^2), so convert the metres to units and the seconds to milliseconds.
+        this.g = G_SI / (metresPerUnit * metresPerUnit * metresPerUnit) / 1000000.0;
+        this.softeningSquared = softening * softening;
+        this.solver = solver;
+
+        x = new double[DEFAULT_CAPACITY];
+        y = new double[DEFAULT_CAPACITY];
+        z = new double[DEFAULT_CAPACITY];
+        vx = new double[DEFAULT_CAPACITY];
+        vy = new double[DEFAULT_CAPACITY];
+        vz = new double[DEFAULT_CAPACITY];
+        ax = new double[DEFAULT_CAPACITY];
+        ay = new double[DEFAULT_CAPACITY];
+        az = new double[DEFAULT_CAPACITY];
+        mass = new double[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Method that creates a system with the bodies of the given store, placed where they are in the store right now.
+     *  Every body that has a parent starts with the speed it needs for a circular orbit around that parent, in the
+     *  direction its scripted orbit was going at the given time. Afterwards, the whole system is slowed down so its
+     *  center of mass stands still. Body i of the store is body i of the system.
+     * The real distance of a body from its parent is the distance in the store divided by its orbit scale.
+     * @param store BodyStore is the store to take the bodies, their masses and their positions from.
+     * @param simTimeMillis double is the simulated time the store was last updated for.
+     * @param metresPerUnit double is how many metres one simulation unit stands for.
+     * @param pool ForkJoinPool is the pool to calculate the pull on big systems with.
+     * @return NBodySystem the new system.
+     */
+    public static NBodySystem fromStore(BodyStore store, double simTimeMillis, double metresPerUnit, ForkJoinPool pool) {
+        NBodySystem system = new NBodySystem(metresPerUnit, 1e-9, pool);
+        int n = store.size();
+
+        // Where the bodies are a moment later, to know which way their orbits go.
+        double nudgeMillis = 60000.0;
+        double[] laterX = new double[n], laterY = new double[n], laterZ = new double[n];
+        store.update(simTimeMillis + nudgeMillis);
+        for (int i = 0; i < n; i++) {
+            laterX[i] = store.getX(i);
+            laterY[i] = store.getY(i);
+            laterZ[i] = store.getZ(i);
+        }
+        store.update(simTimeMillis);
+
+        for (int i = 0; i < n; i++) {
+            int p = store.getParent(i);
+            if (p < 0) {
+                system.add(store.getX(i), store.getY(i), store.getZ(i), 0, 0, 0, store.getMass(i));
+                continue;
+            }
+            double scale = store.getOrbitScale(i);
+            double rx = (store.getX(i) - store.getX(p)) / scale;
+            double ry = (store.getY(i) - store.getY(p)) / scale;
+            double rz = (store.getZ(i) - store.getZ(p)) / scale;
+            double r = Math.sqrt(rx * rx + ry * ry + rz * rz);
+
+            // The direction of the scripted orbit, with the part pointing away from the parent taken out.
+            double dx = (laterX[i] - laterX[p]) / scale - rx;
+            double dy = (laterY[i] - laterY[p]) / scale - ry;
+            double dz = (laterZ[i] - laterZ[p]) / scale - rz;
+            double outwards = (dx * rx + dy * ry + dz * rz) / (r * r);
+            dx -= outwards * rx;
+            dy -= outwards * ry;
+            dz -= outwards * rz;
+            double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            double speed = Math.sqrt(system.g * (store.getMass(p) + store.getMass(i)) / r);
+            system.add(system.x[p] + rx, system.y[p] + ry, system.z[p] + rz,
+                    system.vx[p] + speed * dx / d, system.vy[p] + speed * dy / d, system.vz[p] + speed * dz / d, store.getMass(i));
+        }
+        system.removeMomentum();
+        return system;
+    }
+
+    /**
+     * Method that adds a body to the system.
+     * @return int the index of the new body.
+     */
+    public int add(double x, double y, double z, double vx, double vy, double vz, double mass) {
+        if (!(mass >= 0)) throw new IllegalArgumentException("The mass cannot be negative!");
+        if (size == this.x.length) {
+            grow();
+        }
+        int index = size++;
+        this.x[index] = x;
+        this.y[index] = y;
+        this.z[index] = z;
+        this.vx[index] = vx;
+        this.vy[index] = vy;
+        this.vz[index] = vz;
+        this.mass[index] = mass;
+        accelerationsValid = false;
+        initialEnergy = Double.NaN;
+        return index;
+    }
+
+    /**
+     * Helper method that doubles the capacity of all the arrays.
+     */
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        vz = Arrays.copyOf(vz, capacity);
+        ax = Arrays.copyOf(ax, capacity);
+        ay = Arrays.copyOf(ay, capacity);
+        az = Arrays.copyOf(az, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+    }
+
+    /**
+     * Helper method that changes the speed of every body by the same amount, so that the center of mass stands still.
+     */
+    private void removeMomentum() {
+        double px = 0, py = 0, pz = 0, totalMass = 0;
+        for (int i = 0; i < size; i++) {
+            px += mass[i] * vx[i];
+            py += mass[i] * vy[i];
+            pz += mass[i] * vz[i];
+            totalMass += mass[i];
+        }
+        if (totalMass == 0) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            vx[i] -= px / totalMass;
+            vy[i] -= py / totalMass;
+            vz[i] -= pz / totalMass;
+        }
+    }
+
+    public int size() { return size; }
+    public double getX(int index) { return x[index]; }
+    public double getY(int index) { return y[index]; }
+    public double getZ(int index) { return z[index]; }
+    public double getVX(int index) { return vx[index]; }
+    public double getVY(int index) { return vy[index]; }
+    public double getVZ(int index) { return vz[index]; }
+    public double getMass(int index) { return mass[index]; }
+    public double getMaxStepMillis() { return maxStepMillis; }
+    public double getTimeMillis() { return timeMillis; }
+    public boolean isAdaptive() { return adaptive; }
+    public long getRejectedSteps() { return rejectedSteps; }
+
+    /**
+     * Method that returns how long the next step will be. For leapfrog this is the max step length, for the adaptive
+     *  integrator it is the length it settled on, which shows how hard the bodies are pulling on each other right now.
+     * @return double the length of the next step in simulated milliseconds.
+     */
+    public double getStepMillis() {
+        return (adaptive && !Double.isNaN(adaptiveStepMillis)) ? adaptiveStepMillis : maxStepMillis;
+    }
+
+    /**
+     * Method that returns how far the total energy has drifted from what it was at the start, relative to that start.
+     *  Only checked every so many steps, so it can be slightly behind.
+     * @return double the relative energy drift, 0 meaning no drift at all.
+     */
+    public double getEnergyDrift() { return energyDrift; }
+
+    /**
+     * Method that changes how the pull on the bodies is calculated, for instance to a BarnesHutSolver once the system
+     *  has grown too big to sum up every pair directly.
+     * @param solver GravitySolver is the solver to use from now on.
+     */
+    public void setSolver(GravitySolver solver) {
+        this.solver = solver;
+        accelerationsValid = false;
+    }
+
+    public void setMaxStepMillis(double maxStepMillis) {
+        if (!(maxStepMillis > 0)) throw new IllegalArgumentException("The step length must be positive!");
+        this.maxStepMillis = maxStepMillis;
+    }
+
+    public void setMaxStepsPerAdvance(int maxStepsPerAdvance) {
+        if (maxStepsPerAdvance < 1) throw new IllegalArgumentException("At least one step per call must be allowed!");
+        this.maxStepsPerAdvance = maxStepsPerAdvance;
+    }
+
+    /**
+     * Method that switches between leapfrog and the adaptive Dormand-Prince integrator.
+     * @param adaptive boolean is true to use the adaptive integrator from now on.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Method that sets how precise every step of the adaptive integrator must be. A step is kept if its estimated error
+     *  is below absolute + relative * the size of the value, for every position and speed.
+     * @param relativeTolerance double is the allowed error relative to the size of the value.
+     * @param absoluteTolerance double is the allowed error in units for the positions, and in units per day for the speeds.
+     */
+    public void setTolerance(double relativeTolerance, double absoluteTolerance) {
+        if (!(relativeTolerance >= 0) || !(absoluteTolerance >= 0) || relativeTolerance + absoluteTolerance == 0) {
+            throw new IllegalArgumentException("The tolerances cannot be negative and cannot both be zero!");
+        }
+        this.relativeTolerance = relativeTolerance;
+        this.absoluteTolerance = absoluteTolerance;
+    }
+
+    /**
+     * Method that sets the range the step length of the adaptive integrator stays in. Steps at the shortest length are
+     *  always kept, even if they are not precise enough, so the simulation can never get stuck.
+     * @param minStepMillis double is the shortest step length in simulated milliseconds.
+     * @param maxStepMillis double is the longest step length in simulated milliseconds.
+     */
+    public void setAdaptiveStepRange(double minStepMillis, double maxStepMillis) {
+        if (!(minStepMillis > 0) || !(maxStepMillis >= minStepMillis)) {
+            throw new IllegalArgumentException("The step lengths must be positive and the max cannot be below the min!");
+        }
+        this.minAdaptiveStepMillis = minStepMillis;
+        this.maxAdaptiveStepMillis = maxStepMillis;
+    }
+
+    /**
+     * Method that sets how many steps pass between two checks of the energy drift. The check sums up every pair of bodies
+     *  directly, so for very big systems it can be turned off by giving 0.
+     * @param energyCheckSteps int is the amount of steps between two checks, or 0 to never check.
+     */
+    public void setEnergyCheckSteps(int energyCheckSteps) {
+        if (energyCheckSteps < 0) throw new IllegalArgumentException("The amount of steps cannot be negative!");
+        this.energyCheckSteps = energyCheckSteps;
+    }
+
+    /**
+     * Method that moves the system forward by the given amount of time, with leapfrog or the adaptive integrator. Never
+     *  takes more than the max amount of steps per call, so it can stop short of the given time.
+     * @param millis double is the amount of simulated milliseconds to move forward.
+     * @return double the amount of simulated milliseconds the system actually moved forward.
+     */
+    public double advance(double millis) {
+        if (!(millis > 0)) {
+            return 0;
+        }
+        return adaptive ? advanceAdaptive(millis) : advanceLeapfrog(millis);
+    }
+
+    /**
+     * Helper method that moves the system forward in equal leapfrog steps no longer than the max step length.
+     */
+    private double advanceLeapfrog(double millis) {
+        double steps = Math.ceil(millis / maxStepMillis);
+        if (steps > maxStepsPerAdvance) {
+            // There is not enough time to cover it all, so take as many full length steps as are allowed.
+            for (int i = 0; i < maxStepsPerAdvance; i++) {
+                step(maxStepMillis);
+            }
+            return maxStepsPerAdvance * maxStepMillis;
+        }
+        double dt = millis / steps;
+        for (int i = 0; i < steps; i++) {
+            step(dt);
+        }
+        return millis;
+    }
+
+    /**
+     * Method that moves the system forward by a single leapfrog step: half a kick with the current pull, a full drift
+     *  with the new speed, then another half kick with the pull at the new positions. The pull at the end of a step is
+     *  kept for the start of the next one, so it is only calculated once per step.
+     * @param dt double is the length of the step in simulated milliseconds.
+     */
+    public void step(double dt) {
+        if (Double.isNaN(initialEnergy) && energyCheckSteps > 0) {
+            initialEnergy = computeEnergy();
+        }
+        if (!accelerationsValid) {
+            computeAccelerations();
+        }
+        double halfDt = dt * 0.5;
+        for (int i = 0; i < size; i++) {
+            vx[i] += ax[i] * halfDt;
+            vy[i] += ay[i] * halfDt;
+            vz[i] += az[i] * halfDt;
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            z[i] += vz[i] * dt;
+        }
+        computeAccelerations();
+        for (int i = 0; i < size; i++) {
+            vx[i] += ax[i] * halfDt;
+            vy[i] += ay[i] * halfDt;
+            vz[i] += az[i] * halfDt;
+        }
+        stepDone(dt);
+    }
+
+    /**
+     * Helper method that moves the system forward with Dormand-Prince steps, changing the step length to keep the error
+     *  of every step within the tolerance.
+     */
+    private double advanceAdaptive(double millis) {
+        if (Double.isNaN(initialEnergy) && energyCheckSteps > 0) {
+            initialEnergy = computeEnergy();
+        }
+        ensureAdaptiveCapacity();
+        if (Double.isNaN(adaptiveStepMillis)) {
+            adaptiveStepMillis = Math.min(maxStepMillis, maxAdaptiveStepMillis);
+        }
+
+        double done = 0;
+        for (int attempts = 0; attempts < maxStepsPerAdvance && done < millis; attempts++) {
+            // The last step is cut short to end exactly at the given time, which should not shorten the steps after it.
+            double h = Math.min(adaptiveStepMillis, millis - done);
+            double error = tryAdaptiveStep(h);
+            // How much the step length can change: the error grows with the 5th power of the step length.
+            double factor = (error == 0) ? 5.0 : Math.min(5.0, Math.max(0.2, 0.9 * Math.pow(error, -0.2)));
+
+            if (error <= 1.0 || h <= minAdaptiveStepMillis) {
+                acceptAdaptiveStep();
+                done += h;
+                stepDone(h);
+                adaptiveStepMillis = (h < adaptiveStepMillis) ? Math.min(adaptiveStepMillis, h * factor) : h * factor;
+            } else {
+                rejectedSteps++;
+                adaptiveStepMillis = h * Math.min(factor, 1.0);
+            }
+            adaptiveStepMillis = Math.min(Math.max(adaptiveStepMillis, minAdaptiveStepMillis), maxAdaptiveStepMillis);
+        }
+        return done;
+    }
+
+    /**
+     * Helper method that calculates all the stages of a Dormand-Prince step of the given length, without changing the
+     *  state of the system yet. Afterwards, the temp arrays hold the state at the end of the step.
+     * @return double the estimated error of the step relative to the tolerance. Below 1 means the step is precise enough.
+     */
+    private double tryAdaptiveStep(double h) {
+        // The first stage is the state at the start, where the pull is still known from the end of the last step.
+        if (!accelerationsValid) {
+            computeAccelerations();
+        }
+        System.arraycopy(vx, 0, stageX[0], 0, size);
+        System.arraycopy(vy, 0, stageY[0], 0, size);
+        System.arraycopy(vz, 0, stageZ[0], 0, size);
+        System.arraycopy(ax, 0, stageVX[0], 0, size);
+        System.arraycopy(ay, 0, stageVY[0], 0, size);
+        System.arraycopy(az, 0, stageVZ[0], 0, size);
+
+        for (int s = 1; s < DP_STAGES; s++) {
+            double[] a = DP_A[s];
+            for (int i = 0; i < size; i++) {
+                double sumX = 0, sumY = 0, sumZ = 0, sumVX = 0, sumVY = 0, sumVZ = 0;
+                for (int j = 0; j < s; j++) {
+                    sumX += a[j] * stageX[j][i];
+                    sumY += a[j] * stageY[j][i];
+                    sumZ += a[j] * stageZ[j][i];
+                    sumVX += a[j] * stageVX[j][i];
+                    sumVY += a[j] * stageVY[j][i];
+                    sumVZ += a[j] * stageVZ[j][i];
+                }
+                tempX[i] = x[i] + h * sumX;
+                tempY[i] = y[i] + h * sumY;
+                tempZ[i] = z[i] + h * sumZ;
+                tempVX[i] = vx[i] + h * sumVX;
+                tempVY[i] = vy[i] + h * sumVY;
+                tempVZ[i] = vz[i] + h * sumVZ;
+            }
+            // The positions change by the speed at the stage, the speeds by the pull at the stage.
+            System.arraycopy(tempVX, 0, stageX[s], 0, size);
+            System.arraycopy(tempVY, 0, stageY[s], 0, size);
+            System.arraycopy(tempVZ, 0, stageZ[s], 0, size);
+            solver.computeAccelerations(size, tempX, tempY, tempZ, mass, g, softeningSquared, stageVX[s], stageVY[s], stageVZ[s]);
+        }
+
+        // The error is the root mean square of the error of every value, each relative to what is allowed for it.
+        double speedTolerance = absoluteTolerance / DAY_MILLIS;
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            double errorX = 0, errorY = 0, errorZ = 0, errorVX = 0, errorVY = 0, errorVZ = 0;
+            for (int s = 0; s < DP_STAGES; s++) {
+                double e = DP_E[s];
+                errorX += e * stageX[s][i];
+                errorY += e * stageY[s][i];
+                errorZ += e * stageZ[s][i];
+                errorVX += e * stageVX[s][i];
+                errorVY += e * stageVY[s][i];
+                errorVZ += e * stageVZ[s][i];
+            }
+            sum += square(h * errorX / (absoluteTolerance + relativeTolerance * Math.max(Math.abs(x[i]), Math.abs(tempX[i]))));
+            sum += square(h * errorY / (absoluteTolerance + relativeTolerance * Math.max(Math.abs(y[i]), Math.abs(tempY[i]))));
+            sum += square(h * errorZ / (absoluteTolerance + relativeTolerance * Math.max(Math.abs(z[i]), Math.abs(tempZ[i]))));
+            sum += square(h * errorVX / (speedTolerance + relativeTolerance * Math.max(Math.abs(vx[i]), Math.abs(tempVX[i]))));
+            sum += square(h * errorVY / (speedTolerance + relativeTolerance * Math.max(Math.abs(vy[i]), Math.abs(tempVY[i]))));
+            sum += square(h * errorVZ / (speedTolerance + relativeTolerance * Math.max(Math.abs(vz[i]), Math.abs(tempVZ[i]))));
+        }
+        return (size == 0) ? 0 : Math.sqrt(sum / (6.0 * size));
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /**
+     * Helper method that makes the state at the end of the step that was just tried the state of the system. The arrays
+     *  are swapped instead of copied. The pull at the end of the step is the last stage.
+     */
+    private void acceptAdaptiveStep() {
+        double[] swap;
+        swap = x; x = tempX; tempX = swap;
+        swap = y; y = tempY; tempY = swap;
+        swap = z; z = tempZ; tempZ = swap;
+        swap = vx; vx = tempVX; tempVX = swap;
+        swap = vy; vy = tempVY; tempVY = swap;
+        swap = vz; vz = tempVZ; tempVZ = swap;
+        System.arraycopy(stageVX[DP_STAGES - 1], 0, ax, 0, size);
+        System.arraycopy(stageVY[DP_STAGES - 1], 0, ay, 0, size);
+        System.arraycopy(stageVZ[DP_STAGES - 1], 0, az, 0, size);
+        accelerationsValid = true;
+    }
+
+    /**
+     * Helper method that makes sure the arrays of the adaptive integrator are as big as the arrays of the system.
+     */
+    private void ensureAdaptiveCapacity() {
+        int capacity = x.length;
+        if (tempX != null && tempX.length == capacity) {
+            return;
+        }
+        stageX = new double[DP_STAGES][capacity];
+        stageY = new double[DP_STAGES][capacity];
+        stageZ = new double[DP_STAGES][capacity];
+        stageVX = new double[DP_STAGES][capacity];
+        stageVY = new double[DP_STAGES][capacity];
+        stageVZ = new double[DP_STAGES][capacity];
+        tempX = new double[capacity];
+        tempY = new double[capacity];
+        tempZ = new double[capacity];
+        tempVX = new double[capacity];
+        tempVY = new double[capacity];
+        tempVZ = new double[capacity];
+    }
+
+    /**
+     * Helper method that keeps track of the time and checks the energy drift every so many steps.
+     */
+    private void stepDone(double dt) {
+        timeMillis += dt;
+        if (energyCheckSteps > 0 && ++stepsSinceEnergyCheck >= energyCheckSteps) {
+            stepsSinceEnergyCheck = 0;
+            energyDrift = (initialEnergy == 0) ? 0 : Math.abs((computeEnergy() - initialEnergy) / initialEnergy);
+        }
+    }
+
+    /**
+     * Method that calculates the pull on every body with the solver.
+     */
+    private void computeAccelerations() {
+        solver.computeAccelerations(size, x, y, z, mass, g, softeningSquared, ax, ay, az);
+        accelerationsValid = true;
+    }
+
+    /**
+     * Method that calculates the total energy of the system: the energy of movement of every body, minus the energy that
+     *  would be needed to pull every pair of bodies apart.
+     * @return double the total energy, in kg * units^2 / ms^2.
+     */
+    public double computeEnergy() {
+        double kinetic = 0, potential = 0;
+        for (int i = 0; i < size; i++) {
+            kinetic += 0.5 * mass[i] * (vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i]);
+            for (int j = i + 1; j < size; j++) {
+                double dx = x[j] - x[i];
+                double dy = y[j] - y[i];
+                double dz = z[j] - z[i];
+                potential -= g * mass[i] * mass[j] / Math.sqrt(dx * dx + dy * dy + dz * dz + softeningSquared);
+            }
+        }
+        return kinetic + potential;
+    }
+
+    /**
+     * Method that writes the positions of the bodies into the given store, which must hold the bodies the system was
+     *  created from. A body that has a parent is drawn at its orbit scale times its real distance from that parent, so
+     *  it is drawn at the same kind of distance as its scripted orbit.
+     * @param store BodyStore is the store the system was created from.
+     */
+    public void writeTo(BodyStore store) {
+        int n = Math.min(store.size(), size);
+        for (int i = 0; i < n; i++) {
+            int p = store.getParent(i);
+            if (p < 0) {
+                store.setPosition(i, x[i], y[i], z[i]);
+            } else {
+                double scale = store.getOrbitScale(i);
+                store.setPosition(i, store.getX(p) + scale * (x[i] - x[p]), store.getY(p) + scale * (y[i] - y[p]), store.getZ(p) + scale * (z[i] - z[p]));
+            }
+        }
+    }
+}
@@ -0,0 +1,539 @@
+/**
+ * Class that moves bodies by gravity like NBodySystem, but splits them up along the hierarchy: the Sun with the planets
+ *  is one system, and every planet with its moons is a system of its own. Every system is moved in the frame of its
+ *  central body, with a step length that fits its own fastest orbit. Io goes around Jupiter in under 2 days and Pluto
+ *  around the Sun in 248 years, so the Jovian system takes many small steps for every step of the Sun, while the
+ *  planets do not have to be moved with steps short enough for Io. The work done therefore fits what every system
+ *  needs, instead of everything being moved at the pace of the fastest moon.
+ * In its parent system, a planet with moons counts as one body with all their mass, placed at their shared center of
+ *  mass. Only the motion of the parent system is passed down: after every step of a parent system, the systems of its
+ *  bodies are moved over the same time, feeling the rest of the parent system (like the pull of the Sun) as a tidal
+ *  pull, which is the difference between its pull on a moon and on the planet. Where the rest of the parent system is
+ *  during that step is interpolated from where it was and how fast it moved at the start and the end of the step.
+ *  The moons do not pull back on the parent system, apart from through the shared center of mass.
+ * Every system is moved with leapfrog, in steps of at most 1 / stepsPerOrbit of its shortest orbit.
+ */
+public class NestedGravitySystem implements GravitySimulation {
+    private static final int DEFAULT_STEPS_PER_ORBIT = 200;
+    private static final int DEFAULT_ENERGY_CHECK_STEPS = 100;
+
+    // A central body with the bodies orbiting it. Positions and speeds are relative to the central body, and a body
+    //  that has orbiting bodies itself stands for the center of mass of them all.
+    private static class Subsystem {
+        int centre;
+        int[] bodies;
+        // The system of every body, or null if nothing orbits it.
+        Subsystem[] children;
+        Subsystem parent;
+        int indexInParent;
+        double centreMass, totalMass;
+        double[] mass, x, y, z, vx, vy, vz, ax, ay, az;
+        // Where the bodies were at the start of the last step, for the systems below to interpolate with.
+        double[] startX, startY, startZ, startVX, startVY, startVZ;
+        // Where the bodies of the parent system are as seen from this system, for the tidal pull.
+        double[] outerX, outerY, outerZ, outerMass;
+        long steps;
+    }
+
+    private final double g;
+    private final int n;
+    private final int[] parents;
+    private final Subsystem root;
+    // The center of mass of everything, which moves in a straight line.
+    private final double centreX, centreY, centreZ, centreVX, centreVY, centreVZ;
+    // Every body in the shared frame, filled in when needed.
+    private final double[] absX, absY, absZ, absVX, absVY, absVZ, absMass;
+
+    private int stepsPerOrbit = DEFAULT_STEPS_PER_ORBIT;
+    private int maxStepsPerAdvance = 100000;
+    private int energyCheckSteps = DEFAULT_ENERGY_CHECK_STEPS;
+    private int stepsSinceEnergyCheck = 0;
+    private double timeMillis = 0;
+    private double initialEnergy = Double.NaN;
+    private volatile double energyDrift = 0;
+
+    /**
+     * Constructor that splits the bodies of the given NBodySystem up along the given hierarchy. Every parent must come
+     *  before its children, like in a BodyStore.
+     * @param flat NBodySystem holds the positions, speeds and masses of all the bodies in one frame.
+     * @param parents int[] holds the index of the parent of every body, or -1 for the one body in the middle.
+     * @param metresPerUnit double is how many metres one unit of distance stands for.
+     */
+    public NestedGravitySystem(NBodySystem flat, int[] parents, double metresPerUnit) {
+        if (parents.length != flat.size()) throw new IllegalArgumentException("Every body needs exactly one parent index!");
+        this.g = NBodySystem.G_SI / (metresPerUnit * metresPerUnit * metresPerUnit) / 1e6;
+        this.n = parents.length;
+        this.parents = parents.clone();
+        absX = new double[n];
+        absY = new double[n];
+        absZ = new double[n];
+        absVX = new double[n];
+        absVY = new double[n];
+        absVZ = new double[n];
+        absMass = new double[n];
+
+        // Add up the mass and center of mass of every body with everything orbiting it, children before parents.
+        int rootIndex = -1;
+        for (int i = 0; i < n; i++) {
+            if (parents[i] < 0) {
+                if (rootIndex >= 0) throw new IllegalArgumentException("There can only be one body without a parent!");
+                rootIndex = i;
+            } else if (parents[i] >= i) {
+                throw new IllegalArgumentException("Every parent must come before its children!");
+            }
+            absMass[i] = flat.getMass(i);
+            absX[i] = flat.getX(i) * absMass[i];
+            absY[i] = flat.getY(i) * absMass[i];
+            absZ[i] = flat.getZ(i) * absMass[i];
+            absVX[i] = flat.getVX(i) * absMass[i];
+            absVY[i] = flat.getVY(i) * absMass[i];
+            absVZ[i] = flat.getVZ(i) * absMass[i];
+        }
+        if (rootIndex < 0) throw new IllegalArgumentException("There must be a body without a parent!");
+        for (int i = n - 1; i > 0; i--) {
+            int p = parents[i];
+            if (p >= 0) {
+                absMass[p] += absMass[i];
+                absX[p] += absX[i];
+                absY[p] += absY[i];
+                absZ[p] += absZ[i];
+                absVX[p] += absVX[i];
+                absVY[p] += absVY[i];
+                absVZ[p] += absVZ[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (absMass[i] == 0) throw new IllegalArgumentException("Every body needs a mass!");
+            absX[i] /= absMass[i];
+            absY[i] /= absMass[i];
+            absZ[i] /= absMass[i];
+            absVX[i] /= absMass[i];
+            absVY[i] /= absMass[i];
+            absVZ[i] /= absMass[i];
+        }
+        centreX = absX[rootIndex];
+        centreY = absY[rootIndex];
+        centreZ = absZ[rootIndex];
+        centreVX = absVX[rootIndex];
+        centreVY = absVY[rootIndex];
+        centreVZ = absVZ[rootIndex];
+
+        Subsystem top = createSubsystem(flat, rootIndex);
+        if (top == null) throw new IllegalArgumentException("Nothing orbits the body in the middle!");
+        root = top;
+    }
+
+    /**
+     * Method that creates the nested system for the bodies in the given store, starting from where they are on their
+     *  scripted orbits at the given time, in the same way as NBodySystem.fromStore.
+     * @param store BodyStore holds the bodies, with their masses.
+     * @param simTimeMillis double is the simulated time to start from.
+     * @param metresPerUnit double is how many metres one unit of distance stands for.
+     * @return NestedGravitySystem the system, with the bodies in the same order as in the store.
+     */
+    public static NestedGravitySystem fromStore(BodyStore store, double simTimeMillis, double metresPerUnit) {
+        NBodySystem flat = NBodySystem.fromStore(store, simTimeMillis, metresPerUnit, null);
+        int[] parents = new int[store.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = store.getParent(i);
+        }
+        return new NestedGravitySystem(flat, parents, metresPerUnit);
+    }
+
+    /**
+     * Helper method that creates the system of the given central body and of everything orbiting it, from the bodies
+     *  in the shared frame and the centers of mass found by the constructor.
+     * @return Subsystem the system, or null if nothing orbits the body.
+     */
+    private Subsystem createSubsystem(NBodySystem flat, int centre) {
+        int count = 0;
+        for (int i = centre + 1; i < n; i++) {
+            if (parents[i] == centre) count++;
+        }
+        if (count == 0) {
+            return null;
+        }
+        Subsystem s = new Subsystem();
+        s.centre = centre;
+        s.bodies = new int[count];
+        s.children = new Subsystem[count];
+        s.centreMass = flat.getMass(centre);
+        s.totalMass = absMass[centre];
+        s.mass = new double[count];
+        s.x = new double[count];
+        s.y = new double[count];
+        s.z = new double[count];
+        s.vx = new double[count];
+        s.vy = new double[count];
+        s.vz = new double[count];
+        s.ax = new double[count];
+        s.ay = new double[count];
+        s.az = new double[count];
+        s.startX = new double[count];
+        s.startY = new double[count];
+        s.startZ = new double[count];
+        s.startVX = new double[count];
+        s.startVY = new double[count];
+        s.startVZ = new double[count];
+
+        int k = 0;
+        for (int i = centre + 1; i < n; i++) {
+            if (parents[i] != centre) {
+                continue;
+            }
+            s.bodies[k] = i;
+            s.mass[k] = absMass[i];
+            s.x[k] = absX[i] - flat.getX(centre);
+            s.y[k] = absY[i] - flat.getY(centre);
+            s.z[k] = absZ[i] - flat.getZ(centre);
+            s.vx[k] = absVX[i] - flat.getVX(centre);
+            s.vy[k] = absVY[i] - flat.getVY(centre);
+            s.vz[k] = absVZ[i] - flat.getVZ(centre);
+            Subsystem child = createSubsystem(flat, i);
+            if (child != null) {
+                child.parent = s;
+                child.indexInParent = k;
+                child.outerX = new double[count];
+                child.outerY = new double[count];
+                child.outerZ = new double[count];
+                child.outerMass = new double[count];
+            }
+            s.children[k] = child;
+            k++;
+        }
+        return s;
+    }
+
+    public int size() { return n; }
+    public double getTimeMillis() { return timeMillis; }
+    public double getEnergyDrift() { return energyDrift; }
+
+    /**
+     * Method that returns how long the next step of the Sun's system will be, based on where the planets are now.
+     * @return double the length of the step in simulated milliseconds.
+     */
+    public double getStepMillis() {
+        return stepLength(root);
+    }
+
+    /**
+     * Method that returns how many steps the system of the given body has taken so far, to see how the work is split up.
+     * @param centre int is the index of the body the system is centered on.
+     * @return long the amount of steps, or 0 if nothing orbits the body.
+     */
+    public long getSteps(int centre) {
+        Subsystem s = findSubsystem(root, centre);
+        return (s == null) ? 0 : s.steps;
+    }
+
+    private static Subsystem findSubsystem(Subsystem s, int centre) {
+        if (s.centre == centre) {
+            return s;
+        }
+        for (int k = 0; k < s.children.length; k++) {
+            if (s.children[k] != null) {
+                Subsystem found = findSubsystem(s.children[k], centre);
+                if (found != null) return found;
+            }
+        }
+        return null;
+    }
+
+    public void setStepsPerOrbit(int stepsPerOrbit) {
+        if (stepsPerOrbit < 1) throw new IllegalArgumentException("At least one step per orbit must be taken!");
+        this.stepsPerOrbit = stepsPerOrbit;
+    }
+
+    public void setMaxStepsPerAdvance(int maxStepsPerAdvance) {
+        if (maxStepsPerAdvance < 1) throw new IllegalArgumentException("At least one step per call must be allowed!");
+        this.maxStepsPerAdvance = maxStepsPerAdvance;
+    }
+
+    public void setEnergyCheckSteps(int energyCheckSteps) {
+        if (energyCheckSteps < 0) throw new IllegalArgumentException("The amount of steps cannot be negative!");
+        this.energyCheckSteps = energyCheckSteps;
+    }
+
+    /**
+     * Method that moves all the systems forward by the given amount of time. The Sun's system takes at most the max
+     *  amount of steps per call, so it can stop short of the given time.
+     * @param millis double is the amount of simulated milliseconds to move forward.
+     * @return double the amount of simulated milliseconds the bodies actually moved forward.
+     */
+    public double advance(double millis) {
+        if (!(millis > 0)) {
+            return 0;
+        }
+        if (Double.isNaN(initialEnergy) && energyCheckSteps > 0) {
+            initialEnergy = computeEnergy();
+        }
+        double done = 0;
+        for (int i = 0; i < maxStepsPerAdvance && done < millis; i++) {
+            double h = Math.min(stepLength(root), millis - done);
+            advance(root, h);
+            done += h;
+            timeMillis += h;
+            if (energyCheckSteps > 0 && ++stepsSinceEnergyCheck >= energyCheckSteps) {
+                stepsSinceEnergyCheck = 0;
+                energyDrift = (initialEnergy == 0) ? 0 : Math.abs((computeEnergy() - initialEnergy) / initialEnergy);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Helper method that returns the longest step the given system may take: the given fraction of its shortest orbit,
+     *  with every orbit taken as circular at the distance the body is at right now.
+     */
+    private double stepLength(Subsystem s) {
+        double shortest = Double.MAX_VALUE;
+        for (int k = 0; k < s.bodies.length; k++) {
+            double r2 = s.x[k] * s.x[k] + s.y[k] * s.y[k] + s.z[k] * s.z[k];
+            double period = 2.0 * Math.PI * Math.sqrt(r2 * Math.sqrt(r2) / (g * (s.centreMass + s.mass[k])));
+            shortest = Math.min(shortest, period);
+        }
+        return shortest / stepsPerOrbit;
+    }
+
+    /**
+     * Helper method that moves the given system forward by the given time, in as many equal leapfrog steps as its
+     *  fastest orbit needs. After every step, the systems of its bodies are moved over that same step.
+     */
+    private void advance(Subsystem s, double millis) {
+        int steps = (int) Math.max(1, Math.ceil(millis / stepLength(s)));
+        double dt = millis / steps;
+        double halfDt = dt * 0.5;
+        int count = s.bodies.length;
+        computeAccelerations(s, 0, millis);
+        for (int step = 0; step < steps; step++) {
+            System.arraycopy(s.x, 0, s.startX, 0, count);
+            System.arraycopy(s.y, 0, s.startY, 0, count);
+            System.arraycopy(s.z, 0, s.startZ, 0, count);
+            System.arraycopy(s.vx, 0, s.startVX, 0, count);
+            System.arraycopy(s.vy, 0, s.startVY, 0, count);
+            System.arraycopy(s.vz, 0, s.startVZ, 0, count);
+            for (int k = 0; k < count; k++) {
+                s.vx[k] += s.ax[k] * halfDt;
+                s.vy[k] += s.ay[k] * halfDt;
+                s.vz[k] += s.az[k] * halfDt;
+                s.x[k] += s.vx[k] * dt;
+                s.y[k] += s.vy[k] * dt;
+                s.z[k] += s.vz[k] * dt;
+            }
+            computeAccelerations(s, (step + 1) * dt, millis);
+            for (int k = 0; k < count; k++) {
+                s.vx[k] += s.ax[k] * halfDt;
+                s.vy[k] += s.ay[k] * halfDt;
+                s.vz[k] += s.az[k] * halfDt;
+            }
+            s.steps++;
+
+            for (int k = 0; k < count; k++) {
+                if (s.children[k] != null) {
+                    advance(s.children[k], dt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method that calculates the pull on the bodies of the given system, relative to its central body. On top
+     *  of the pull of the central body and of each other, this holds how much faster the central body is pulled by the
+     *  other bodies than they pull on each other (as the frame moves along with it), and the tidal pull of the rest of
+     *  the parent system.
+     * @param time double is how far into the step of the parent system the bodies are, in simulated milliseconds.
+     * @param parentStep double is the length of that step of the parent system.
+     */
+    private void computeAccelerations(Subsystem s, double time, double parentStep) {
+        int count = s.bodies.length;
+        for (int k = 0; k < count; k++) {
+            double rx = s.x[k], ry = s.y[k], rz = s.z[k];
+            double r2 = rx * rx + ry * ry + rz * rz;
+            double strength = -g * (s.centreMass + s.mass[k]) / (r2 * Math.sqrt(r2));
+            double ax = rx * strength, ay = ry * strength, az = rz * strength;
+            for (int l = 0; l < count; l++) {
+                if (l == k) {
+                    continue;
+                }
+                double dx = s.x[l] - rx, dy = s.y[l] - ry, dz = s.z[l] - rz;
+                double d2 = dx * dx + dy * dy + dz * dz;
+                double direct = g * s.mass[l] / (d2 * Math.sqrt(d2));
+                double l2 = s.x[l] * s.x[l] + s.y[l] * s.y[l] + s.z[l] * s.z[l];
+                double indirect = g * s.mass[l] / (l2 * Math.sqrt(l2));
+                ax += dx * direct - s.x[l] * indirect;
+                ay += dy * direct - s.y[l] * indirect;
+                az += dz * direct - s.z[l] * indirect;
+            }
+            s.ax[k] = ax;
+            s.ay[k] = ay;
+            s.az[k] = az;
+        }
+        if (s.parent != null) {
+            addTidalPull(s, (parentStep > 0) ? time / parentStep : 0, parentStep);
+        }
+    }
+
+    /**
+     * Helper method that adds the tidal pull of the rest of the parent system to the bodies of the given system. The
+     *  rest of the parent system is placed by cubic (Hermite) interpolation between the start and end of its last step.
+     * @param fraction double is how far into the step of the parent system the bodies are, from 0 to 1.
+     * @param parentStep double is the length of that step of the parent system.
+     */
+    private void addTidalPull(Subsystem s, double fraction, double parentStep) {
+        Subsystem p = s.parent;
+        int self = s.indexInParent;
+        double f2 = fraction * fraction, f3 = f2 * fraction;
+        double startWeight = 2 * f3 - 3 * f2 + 1, startSpeedWeight = (f3 - 2 * f2 + fraction) * parentStep;
+        double endWeight = -2 * f3 + 3 * f2, endSpeedWeight = (f3 - f2) * parentStep;
+
+        // Everything in the parent system, as seen from the center of mass of this system. The central body of the
+        //  parent system is at 0 in its own frame, so it takes the place of this system in the list.
+        double selfX = 0, selfY = 0, selfZ = 0;
+        for (int l = 0; l < p.bodies.length; l++) {
+            double px = startWeight * p.startX[l] + startSpeedWeight * p.startVX[l] + endWeight * p.x[l] + endSpeedWeight * p.vx[l];
+            double py = startWeight * p.startY[l] + startSpeedWeight * p.startVY[l] + endWeight * p.y[l] + endSpeedWeight * p.vy[l];
+            double pz = startWeight * p.startZ[l] + startSpeedWeight * p.startVZ[l] + endWeight * p.z[l] + endSpeedWeight * p.vz[l];
+            if (l == self) {
+                selfX = px;
+                selfY = py;
+                selfZ = pz;
+            }
+            s.outerX[l] = px;
+            s.outerY[l] = py;
+            s.outerZ[l] = pz;
+            s.outerMass[l] = p.mass[l];
+        }
+        for (int l = 0; l < p.bodies.length; l++) {
+            s.outerX[l] -= selfX;
+            s.outerY[l] -= selfY;
+            s.outerZ[l] -= selfZ;
+        }
+        s.outerX[self] = -selfX;
+        s.outerY[self] = -selfY;
+        s.outerZ[self] = -selfZ;
+        s.outerMass[self] = p.centreMass;
+
+        // Where the central body of this system is, as seen from its center of mass.
+        double centreX = 0, centreY = 0, centreZ = 0;
+        for (int k = 0; k < s.bodies.length; k++) {
+            centreX -= s.mass[k] * s.x[k];
+            centreY -= s.mass[k] * s.y[k];
+            centreZ -= s.mass[k] * s.z[k];
+        }
+        centreX /= s.totalMass;
+        centreY /= s.totalMass;
+        centreZ /= s.totalMass;
+
+        // First the pull on the central body, which is then taken off the pull on every other body.
+        double centreAX = 0, centreAY = 0, centreAZ = 0;
+        for (int k = -1; k < s.bodies.length; k++) {
+            double qx = centreX, qy = centreY, qz = centreZ;
+            if (k >= 0) {
+                qx += s.x[k];
+                qy += s.y[k];
+                qz += s.z[k];
+            }
+            double ax = 0, ay = 0, az = 0;
+            for (int l = 0; l < p.bodies.length; l++) {
+                double dx = s.outerX[l] - qx, dy = s.outerY[l] - qy, dz = s.outerZ[l] - qz;
+                double d2 = dx * dx + dy * dy + dz * dz;
+                double strength = g * s.outerMass[l] / (d2 * Math.sqrt(d2));
+                ax += dx * strength;
+                ay += dy * strength;
+                az += dz * strength;
+            }
+            if (k < 0) {
+                centreAX = ax;
+                centreAY = ay;
+                centreAZ = az;
+            } else {
+                s.ax[k] += ax - centreAX;
+                s.ay[k] += ay - centreAY;
+                s.az[k] += az - centreAZ;
+            }
+        }
+    }
+
+    /**
+     * Helper method that places every body of the given system and of the systems below it in the shared frame.
+     */
+    private void computeAbsolute(Subsystem s, double x, double y, double z, double vx, double vy, double vz) {
+        // The center of mass of the system is given, so first find where the central body is.
+        double cx = x, cy = y, cz = z, cvx = vx, cvy = vy, cvz = vz;
+        for (int k = 0; k < s.bodies.length; k++) {
+            double share = s.mass[k] / s.totalMass;
+            cx -= share * s.x[k];
+            cy -= share * s.y[k];
+            cz -= share * s.z[k];
+            cvx -= share * s.vx[k];
+            cvy -= share * s.vy[k];
+            cvz -= share * s.vz[k];
+        }
+        setAbsolute(s.centre, cx, cy, cz, cvx, cvy, cvz, s.centreMass);
+        for (int k = 0; k < s.bodies.length; k++) {
+            double bx = cx + s.x[k], by = cy + s.y[k], bz = cz + s.z[k];
+            double bvx = cvx + s.vx[k], bvy = cvy + s.vy[k], bvz = cvz + s.vz[k];
+            if (s.children[k] != null) {
+                computeAbsolute(s.children[k], bx, by, bz, bvx, bvy, bvz);
+            } else {
+                setAbsolute(s.bodies[k], bx, by, bz, bvx, bvy, bvz, s.mass[k]);
+            }
+        }
+    }
+
+    private void setAbsolute(int index, double x, double y, double z, double vx, double vy, double vz, double mass) {
+        absX[index] = x;
+        absY[index] = y;
+        absZ[index] = z;
+        absVX[index] = vx;
+        absVY[index] = vy;
+        absVZ[index] = vz;
+        absMass[index] = mass;
+    }
+
+    /**
+     * Helper method that places all the bodies in the shared frame at the current time.
+     */
+    private void computeAbsolute() {
+        double t = timeMillis;
+        computeAbsolute(root, centreX + centreVX * t, centreY + centreVY * t, centreZ + centreVZ * t, centreVX, centreVY, centreVZ);
+    }
+
+    /**
+     * Method that calculates the total energy of all the bodies in the shared frame, in the same way as NBodySystem.
+     * @return double the total energy, in kg * units^2 / ms^2.
+     */
+    public double computeEnergy() {
+        computeAbsolute();
+        double kinetic = 0, potential = 0;
+        for (int i = 0; i < n; i++) {
+            kinetic += 0.5 * absMass[i] * (absVX[i] * absVX[i] + absVY[i] * absVY[i] + absVZ[i] * absVZ[i]);
+            for (int j = i + 1; j < n; j++) {
+                double dx = absX[j] - absX[i];
+                double dy = absY[j] - absY[i];
+                double dz = absZ[j] - absZ[i];
+                potential -= g * absMass[i] * absMass[j] / Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+        }
+        return kinetic + potential;
+    }
+
+    /**
+     * Method that writes the positions of the bodies into the given store, in the same way as NBodySystem.writeTo: a
+     *  body that has a parent is drawn at its orbit scale times its real distance from that parent.
+     * @param store BodyStore is the store the system was created from.
+     */
+    public void writeTo(BodyStore store) {
+        computeAbsolute();
+        int count = Math.min(store.size(), n);
+        for (int i = 0; i < count; i++) {
+            int p = store.getParent(i);
+            if (p < 0) {
+                store.setPosition(i, absX[i], absY[i], absZ[i]);
+            } else {
+                double scale = store.getOrbitScale(i);
+                store.setPosition(i, store.getX(p) + scale * (absX[i] - absX[p]), store.getY(p) + scale * (absY[i] - absY[p]), store.getZ(p) + scale * (absZ[i] - absZ[p]));
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Class that draws the orbit paths of all bodies around the same parent using StdDraw3D, as one shape of lines attached
+ *  to the view of that parent, so it moves along with the parent without being written to. So the paths around the Sun
+ *  cost one draw call together, as do those around every planet with moons, instead of a shape per dot. Every path
+ *  gets more points where it bends more sharply, just enough that it is never further off from the real ellipse than a
+ *  set tolerance.
+ */
+public class OrbitPathView {
+    // The biggest angle a path may turn in one line, so even the smallest paths still look round.
+    private static final double MAX_ANGLE_STEP = Math.PI / 16.0;
+
+    private final StdDraw3D.Shape path;
+
+    /**
+     * Method that creates the paths of the given bodies, which must all orbit the Body of the given view.
+     * @param parentView BodyView is the view of the parent the bodies orbit.
+     * @param bodies ArrayList<Body> is the bodies to draw the path of.
+     * @param colors ArrayList<Color> is the colour of the path of each of the bodies.
+     * @param tolerance double is how far the drawn path may at most be off from the real one.
+     */
+    public OrbitPathView(BodyView parentView, ArrayList<Body> bodies, ArrayList<Color> colors, double tolerance) {
+        if (tolerance <= 0) {
+            throw new IllegalArgumentException("The tolerance of the orbit paths has to be bigger than 0!");
+        }
+
+        double[] x = new double[256];
+        double[] y = new double[256];
+        double[] z = new double[256];
+        int count = 0;
+        int[] stripLengths = new int[bodies.size()];
+        Color[] stripColors = colors.toArray(new Color[0]);
+        for (int i = 0; i < bodies.size(); i++) {
+            Body body = bodies.get(i);
+            double[] angles = sampleEllipse(body.getOrbitWidth(), body.getOrbitHeight(), tolerance);
+            // The path is tilted around the y axis by the angle the body moves up and down at, like the body itself.
+            double tilt = Math.toRadians(body.getMaxAngle());
+            double cosTilt = Math.cos(tilt);
+            double sinTilt = Math.sin(tilt);
+
+            // The last point is the first one again, to close the path.
+            if (count + angles.length + 1 > x.length) {
+                int capacity = Math.max(2 * x.length, count + angles.length + 1);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+            }
+            for (int j = 0; j <= angles.length; j++) {
+                double angle = (j < angles.length) ? angles[j] : angles[0];
+                double flatX = body.getOrbitWidth() * Math.cos(angle);
+                x[count] = flatX * cosTilt;
+                y[count] = body.getOrbitHeight() * Math.sin(angle);
+                z[count] = flatX * sinTilt;
+                count++;
+            }
+            stripLengths[i] = angles.length + 1;
+        }
+
+        path = StdDraw3D.lines(x, y, z, stripLengths, stripColors);
+        parentView.attach(path);
+    }
+
+    /**
+     * Method that creates the paths of all bodies drawn by the given views that have a parent, one shape for every
+     *  parent, with every path in the colour of its body.
+     * @param views ArrayList<BodyView> is the views of the bodies.
+     * @param tolerance double is how far the drawn paths may at most be off from the real ones.
+     * @return ArrayList<OrbitPathView> the created paths, in the order their parents were first met in.
+     */
+    public static ArrayList<OrbitPathView> createAll(ArrayList<BodyView> views, double tolerance) {
+        HashMap<Body, BodyView> viewOf = new HashMap<>();
+        LinkedHashMap<Body, ArrayList<BodyView>> byParent = new LinkedHashMap<>();
+        for (BodyView view : views) {
+            viewOf.put(view.getBody(), view);
+            Body parent = view.getBody().getParent();
+            if (parent != null) {
+                byParent.computeIfAbsent(parent, key -> new ArrayList<>()).add(view);
+            }
+        }
+
+        ArrayList<OrbitPathView> paths = new ArrayList<>();
+        for (Body parent : byParent.keySet()) {
+            ArrayList<Body> bodies = new ArrayList<>();
+            ArrayList<Color> colors = new ArrayList<>();
+            for (BodyView view : byParent.get(parent)) {
+                bodies.add(view.getBody());
+                colors.add(view.getColor());
+            }
+            BodyView parentView = viewOf.get(parent);
+            if (parentView == null) {
+                throw new IllegalArgumentException("The parent " + parent.getName() + " has no view to attach the paths to!");
+            }
+            paths.add(new OrbitPathView(parentView, bodies, colors, tolerance));
+        }
+        return paths;
+    }
+
+    /**
+     * Helper method that picks the angles to draw the ellipse with the given half axes at, such that no line between two
+     *  of them is further off from the ellipse than the given tolerance. A line of length L along a curve with curvature
+     *  k is off by about k * L^2 / 8 in the middle, so the lines are made as long as that allows, using the curvature
+     *  halfway along the line.
+     * @param a double is the half axis along x.
+     * @param b double is the half axis along y.
+     * @param tolerance double is how far a line may at most be off from the ellipse.
+     * @return double[] the angles, from 0 up to (not including) a full circle.
+     */
+    static double[] sampleEllipse(double a, double b, double tolerance) {
+        double[] angles = new double[64];
+        int count = 0;
+        double angle = 0;
+        while (angle < 2 * Math.PI) {
+            if (count == angles.length) {
+                angles = Arrays.copyOf(angles, 2 * count);
+            }
+            angles[count++] = angle;
+            double step = angleStep(a, b, tolerance, angle);
+            angle += Math.min(step, angleStep(a, b, tolerance, angle + step / 2));
+        }
+        return Arrays.copyOf(angles, count);
+    }
+
+    /**
+     * Helper method that gives how far the angle may go on from the given angle for one line, going by the curvature of
+     *  the ellipse at that angle.
+     */
+    private static double angleStep(double a, double b, double tolerance, double angle) {
+        double sin = Math.sin(angle);
+        double cos = Math.cos(angle);
+        double speedSquared = a * a * sin * sin + b * b * cos * cos;
+        double speed = Math.sqrt(speedSquared);
+        if (speed == 0) {
+            return MAX_ANGLE_STEP;
+        }
+        double curvature = Math.abs(a * b) / (speedSquared * speed);
+        double length = (curvature > 0) ? Math.sqrt(8 * tolerance / curvature) : Double.POSITIVE_INFINITY;
+        return Math.min(length / speed, MAX_ANGLE_STEP);
+    }
+}
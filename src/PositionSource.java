@@ -0,0 +1,21 @@
+/**
+ * Interface for anything that can place a fixed set of bodies at any given time, like the BodyStore or the
+ *  KeplerPropagator. What the unit of time is, is up to the source itself.
+ */
+public interface PositionSource {
+    /**
+     * Method that returns the amount of bodies the source places.
+     * @return int the amount of bodies, which are numbered from 0.
+     */
+    int size();
+
+    /**
+     * Method that places every body where it is at the given time.
+     * @param time double is the time to place the bodies at, in the unit of the source.
+     */
+    void update(double time);
+
+    double getX(int index);
+    double getY(int index);
+    double getZ(int index);
+}
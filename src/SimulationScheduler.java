@@ -0,0 +1,65 @@
+/**
+ * Class that keeps the simulation running at the speed the time amplifier says it should, no matter how long each
+ *  drawn frame actually takes. The real time that passed between frames is measured with System.nanoTime and collected
+ *  in an accumulator, which is then spent in steps of a fixed length. Whatever is left over in the accumulator is given
+ *  back as an alpha, so that drawing can happen at the right moment in between the last two steps.
+ * If frames are slow, multiple steps are run per frame so the simulation keeps up with real time. The amount of steps
+ *  per frame is capped, so one very long frame (like the window being dragged) cannot make the simulation stall.
+ */
+public class SimulationScheduler {
+    private final double stepMillis;
+    private final int maxStepsPerFrame;
+
+    private long lastNanos;
+    private double accumulatorMillis;
+    private boolean started = false;
+
+    /**
+     * Method that creates a scheduler that runs the simulation in steps of the given length.
+     * @param stepMillis double is the amount of real milliseconds each fixed step of the simulation stands for.
+     * @param maxStepsPerFrame int is the most steps that may be run for a single frame before the rest is dropped.
+     */
+    public SimulationScheduler(double stepMillis, int maxStepsPerFrame) {
+        if (stepMillis <= 0) throw new IllegalArgumentException("The step length must be positive!");
+        if (maxStepsPerFrame < 1) throw new IllegalArgumentException("At least one step per frame must be allowed!");
+        this.stepMillis = stepMillis;
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    public double getStepMillis() { return stepMillis; }
+
+    /**
+     * Method that measures how much real time has passed since the last call and returns how many fixed steps the
+     *  simulation has to run to catch up with it. The first call only starts the clock and never asks for any steps.
+     * @return int the amount of fixed steps that should be run before the next frame is drawn.
+     */
+    public int advance() {
+        long now = System.nanoTime();
+        if (!started) {
+            started = true;
+            lastNanos = now;
+            return 0;
+        }
+
+        accumulatorMillis += (now - lastNanos) / 1000000.0;
+        lastNanos = now;
+
+        int steps = (int) (accumulatorMillis / stepMillis);
+        if (steps > maxStepsPerFrame) {
+            // We are too far behind to ever catch up, so forget about the time we cannot spend this frame.
+            steps = maxStepsPerFrame;
+            accumulatorMillis = 0;
+        } else {
+            accumulatorMillis -= steps * stepMillis;
+        }
+        return steps;
+    }
+
+    /**
+     * Method that returns how far the current moment is between the last step that was run and the next one.
+     * @return double the fraction of a step that has not been run yet, between 0 (inclusive) and 1 (exclusive).
+     */
+    public double getAlpha() {
+        return Math.min(accumulatorMillis / stepMillis, 1.0);
+    }
+}
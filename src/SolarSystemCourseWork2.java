@@ -1,7 +1,10 @@
 import java.awt.*;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Application file that runs the correct submission Solar System made using StdDraw3D & Java3D. Requires the included
@@ -12,38 +15,105 @@ import java.util.HashMap;
  * Made for CIS2166 Computer Graphics & Modelling Coursework 2 (2018-2019)
  */
 public class SolarSystemCourseWork2 {
-    public static final ArrayList<Body> rootBodies = new ArrayList<>();
-
-    // The variable below dictates how many milliseconds are between each frame of movement.
-    //  The higher the number, the longer it will take before the next frame is shown.
+    // Holds the orbital values and positions of all the bodies, so they can all be updated in one pass.
+    public static final BodyStore bodyStore = new BodyStore();
+    // The views drawing the bodies, in the same order as the bodies were added to the store.
+    public static final ArrayList<BodyView> bodyViews = new ArrayList<>();
+    private static AsteroidBeltView asteroidBelt = null;
+    private static TextureManager textureManager = null;
+    // The orbit paths of the bodies, one shape for all bodies around the same parent, attached to the view of that parent.
+    private static ArrayList<OrbitPathView> orbitPaths = new ArrayList<>();
+    // The names of all bodies, drawn together as one shape.
+    private static LabelBatch labels = null;
+    // The position and axes of the camera, fetched once every frame.
+    private static final double[] cameraFrame = new double[12];
+    // Where every line of information is shown on screen, on the scale of the overlay.
+    private static final double[][] hudPositions = {{10, 95}, {10, 89}, {10, 83}, {10, 77}, {70, 95}, {70, 89}, {70, 83}, {70, 77}, {70, 71}};
+
+    // The variable below dictates how many real milliseconds each fixed step of the simulation stands for. The steps are
+    //  run as real time passes, no matter how long it takes to draw each frame.
     public static final int timeShiftMilliseconds = 1;
+    // The most steps that are run for a single frame. If a frame takes longer than this, the rest of that time is dropped.
+    private static final int maxStepsPerFrame = 1000;
     // The variable below dictates how many milliseconds are performed per every actual shift.
     //  So for instance 1:100 would be 100 milliseconds of movement per every real-time 1 millisecond shift.
-    public static int timeAmplifier = 1;
+    public static volatile int timeAmplifier = 1;
     private static int increaseAmount = 1;
-    private static boolean timeUpdated = true;
+    // The amount of simulated milliseconds that have passed since the start of the simulation. Every Body calculates
+    //  where it should be directly from this, so changing it jumps the whole simulation to that point in time.
+    public static volatile double simTimeMillis = 0;
+    // The simulated time at the step before the last, so frames can be drawn in between the last two steps.
+    private static double previousSimTimeMillis = 0;
 
     // Scaling options for the planets and the camDist between them.
     public static final double pixelsPerAU = 50.0;
     public static final double sizeScale = 4000.0;
+    // How many metres one unit of distance in the simulation stands for.
+    public static final double metresPerUnit = 149.6e9 / pixelsPerAU;
 
     // Performance settings.
-    public static double orbitDots = 2;
-
-    // Variables for camera control.
-    private static boolean freeMode = true;
-    private static double camDist = 5;
-    private static Body currentOrbit;
+    // How far (in units) the drawn orbit paths may at most be off from the real ones. The paths get more points where
+    //  they bend more sharply, so raising this means fewer points on every path.
+    public static double orbitPathTolerance = 0.01;
+    // When true, the bodies are updated one depth level at a time over all cores. Only worth it for very big systems.
+    public static boolean parallelUpdate = false;
+    // The amount of asteroids in the belt between Mars and Jupiter, all drawn as a single cloud of points. 0 for no belt.
+    public static int asteroidCount = 100000;
+    // When true, the planets are drawn with fewer triangles the further away they are, down to a single point.
+    public static boolean levelOfDetail = true;
+    // When true, the textures are decoded in the background, so the window shows up right away with the planets in their
+    //  own colour until their texture arrives.
+    public static boolean asyncTextures = true;
+    // The amount of memory the textures of the bodies may take together. Every body gets a texture just big enough for
+    //  how big it is drawn, and textures no body uses anymore are dropped when this runs out. 0 to load every texture
+    //  once at full size instead.
+    public static long textureBudgetBytes = 64L * 1024 * 1024;
+    // How high the names of the bodies are drawn in pixels, however far away the bodies are. 0 for no names.
+    public static double labelPixels = 14;
+
+    // Precomputed positions of the bodies, made with ChebyshevEphemeris. When the simulated time is covered by it, the
+    //  positions are looked up in there instead of being calculated. Optional, given as the first argument.
+    private static ChebyshevEphemeris ephemeris = null;
+
+    // How the bodies are moved: 0 along their scripted orbits, 1 by the gravity they have on each other all in one
+    //  system, or 2 by gravity with every planet and its moons in a system of its own, so the fast moons do not hold
+    //  up the planets. Switched by the keys on the main thread, the system itself is only created and used by the frame
+    //  callback.
+    private static volatile int gravityMode = 0;
+    private static final String[] gravityModeNames = {"off", "all together", "nested"};
+    private static volatile GravitySimulation gravity = null;
+    // The mode the gravity system was created for.
+    private static int gravitySystemMode = 0;
+    // The simulated time the gravity system was started at, as the system counts its own time from 0.
+    private static double gravityStartMillis = 0;
+    // The most steps gravity may take per frame. When the bodies come so close that this is not enough to keep up,
+    //  the simulated time slows down instead of the frame being held up.
+    private static final int maxGravityStepsPerFrame = 500;
+
+    // Runs the simulation as real time passes. Only used from the frame callback.
+    private static final SimulationScheduler scheduler = new SimulationScheduler(timeShiftMilliseconds, maxStepsPerFrame);
+
+    // Variables for camera control. Set by the keys on the main thread, but read every frame by the frame callback.
+    private static volatile boolean freeMode = true;
+    private static volatile double camDist = 5;
+    private static volatile Body currentOrbit;
+    // Set by the keys when the camera has to be moved back to the orbited planet. The camera itself is only ever moved by
+    //  the frame callback, as it is also read there every frame.
+    private static volatile boolean repositionRequested = false;
     private static HashMap<Integer, Boolean> pressedKeys = new HashMap<>();
     private static int childPointer = 0;
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            ephemeris = ChebyshevEphemeris.open(Paths.get(args[0]));
+        }
+
         // Lower these variables if you're experiencing FPS drops.
         // DEFAULT_BACK_CLIP is how much camDist it takes from the camera for StdDraw3D to stop drawing objects at that camDist.
         StdDraw3D.DEFAULT_BACK_CLIP = 25;
-        // orbitDots is the amplifier for the amount of dots drawn for the orbit line of a planet. Lowering this means
-        //  less dots, thus making the simulation smoother due to less objects being drawn.
-        orbitDots = 2.5;
+        // orbitPathTolerance is how far the orbit lines of the planets may be off from their real orbits. Raising this
+        //  means fewer points on the lines, thus making the simulation smoother.
+        orbitPathTolerance = 0.01;
 
         StdDraw3D.fullscreen();
         StdDraw3D.setScale(-100.0, 100.0);
@@ -64,6 +134,7 @@ public class SolarSystemCourseWork2 {
         pressedKeys.put(KeyEvent.VK_Z, false);
         pressedKeys.put(KeyEvent.VK_E, false);
         pressedKeys.put(KeyEvent.VK_Q, false);
+        pressedKeys.put(KeyEvent.VK_G, false);
         pressedKeys.put(KeyEvent.VK_UP, false);
         pressedKeys.put(KeyEvent.VK_DOWN, false);
         pressedKeys.put(KeyEvent.VK_RIGHT, false);
@@ -76,55 +147,48 @@ public class SolarSystemCourseWork2 {
         // Draw the light coming from the sun.
         StdDraw3D.pointLight(0, 0, 0, Color.WHITE);
 
-        // Create all the planets. The sun doesn't rotate around anything, so it has no parent.
-        Body sun = new Body("Sun", (1391000 / 15.0), 0, 0, 576, 0, null, 0, 0, "./assets/textures/2k_sun.jpg", Color.ORANGE);
-
-        Body mercury = new Body("Mercury", 4879, 7, .034, 1407.6, 88, sun, 46, 69.8, "./assets/textures/2k_mercury.jpg", Color.GRAY);
-        Body venus = new Body("Venus", 12104, 3.4, 177.4, -5832.5, 224.7, sun, 107.5, 108.9, "./assets/textures/2k_venus_atmosphere.jpg", Color.ORANGE);
-
-        Body earth = new Body("Earth", 12756, 0, 23.4, 23.9, 365.2, sun, 147.1, 152.1, "./assets/textures/2k_earth_daymap.jpg", Color.BLUE);
-        Body moon = new Body("Moon", 3475, 5.1, 6.7, 655.7, 27.3, earth, (.363 * 20.0), (.406 * 20.0), "./assets/textures/2k_moon.jpg", Color.WHITE);
-        currentOrbit = earth;
+        // Create all the planets and a view to draw each of them.
+        StdDraw3D.setLevelOfDetail(levelOfDetail);
+        StdDraw3D.setAsyncTextures(asyncTextures);
+        if (textureBudgetBytes > 0) {
+            textureManager = new TextureManager(textureBudgetBytes);
+        }
+        Body sun = createSolarSystem(bodyStore, bodyViews);
+        orbitPaths = OrbitPathView.createAll(bodyViews, orbitPathTolerance);
+        if (labelPixels > 0) {
+            // The characters are drawn twice as high as they are shown, so they stay sharp when a name is drawn bigger.
+            labels = new LabelBatch(bodyViews, new GlyphAtlas(StdDraw3D.getFont().deriveFont((float)(2 * labelPixels))), labelPixels);
+        }
+        currentOrbit = sun.getChild(2);
         int planetPointer = 2;
-
-        Body mars = new Body("Mars", 6792, 1.9, 25.2, 24.6, 687.0, sun, 206.6, 249.2, "./assets/textures/2k_mars.jpg", Color.RED);
-
-        Body jupiter = new Body("Jupiter", 142984, 1.3, 3.1, 9.9, 4331, sun, (740.5 / 1.75), (816.6 / 1.75), "./assets/textures/2k_jupiter.jpg", Color.YELLOW);
-        Body io = new Body("Io", 3643, .04, 0, 42.5, 1.8, jupiter, (.420 * 145.0), (.424 * 145.0), "./assets/textures/io.jpg", Color.WHITE);
-//        Body europa = new Body("Europa", 3122, .47, 0, 85.2, 3.6, jupiter, (.664 * 110.0), (.678 * 110.0), "./assets/textures/europa.jpg", Color.YELLOW);
-        Body ganymede = new Body("Ganymede", 5262, .18, 0, 171.7, 7.2, jupiter, (1.068 * 85.0), (1.072 * 85.0), "./assets/textures/ganymede.jpg", Color.LIGHT_GRAY);
-        Body callisto = new Body("Callisto", 4821, .19, 0, 400.5, 16.7, jupiter, (1.87 * 60.0), (1.896 * 60.0), "./assets/textures/callisto.jpg", Color.ORANGE);
-
-        Body saturn = new Body("Saturn", 120536, 2.5, 26.7, 10.7, 10747, sun, (1352.6 / 1.75), (1514.5 / 1.75), "./assets/textures/2k_saturn.jpg", Color.WHITE);
-        saturn.addRing(180000, 26.7, "./assets/textures/2k_saturn_ring_alpha.png");
-        Body titan = new Body("Titan", 5150, .33, 0, 382.69, 15.945, saturn, (1.222 * 125.0), (1.187 * 125.0), "./assets/textures/titan.jpg", Color.GRAY);
-
-        Body uranus = new Body("Uranus", 51118, .8, 97.8, -17.2, 30689, sun, (2741.3 / 1.75), (3003.6 / 1.75), "./assets/textures/2k_uranus.jpg", Color.CYAN);
-        Body titania = new Body("Titania", 1577.8, .08, 0, 208.941, 8.705, uranus, (.436 * 55.0), (.436 * 55.0), Color.YELLOW);
-        Body oberon = new Body("Oberon", 1522.8, .07, 0, 323.118, 13.463, uranus, (.584 * 60.0), (.583 * 60.0), Color.GRAY);
-
-        Body neptune = new Body("Neptune", 49528, 1.8, 28.3, 16.1, 59800, sun, (4444.5 / 1.75), (4545.7 / 1.75), "./assets/textures/2k_neptune.jpg", Color.BLUE);
-        Body pluto = new Body("Pluto", 2370, 17.2, 122.5, -153.3, 90560, sun, (4436.8 / 1.75), (7375.9 / 1.75), "./assets/textures/plutomap2k.jpg", Color.LIGHT_GRAY);
+        if (asteroidCount > 0) {
+            // The belt is drawn a bit closer to the Sun than it really is, as Jupiter is drawn closer too.
+            asteroidBelt = new AsteroidBeltView(AsteroidBelt.createMainBelt(asteroidCount, 1, pixelsPerAU, 0.8), Color.GRAY, ForkJoinPool.commonPool());
+        }
+        if (ephemeris != null && ephemeris.getBodyCount() != bodyStore.size()) {
+            throw new IllegalArgumentException("The ephemeris holds " + ephemeris.getBodyCount() + " bodies, but the simulation " + bodyStore.size() + "!");
+        }
 
         // Set how much the user scrolls per unit of movement of the scroll wheel to be half the normal amount.
         double originalZoom = StdDraw3D.getZoomScale() / 2.0;
         StdDraw3D.setOrbitScale(originalZoom);
 
+        // Move the planets right before every frame is drawn, on the thread that draws them. The loop below only has to
+        //  handle the keys and the information shown on screen.
+        StdDraw3D.setFrameCallback(this::simulateFrame);
+
+        // The lines of information drawn on screen, and the values they were made from. A line is only made again once
+        //  any of its values changed, and the overlay is only drawn again once any of its lines was made again.
+        String[] hud = new String[hudPositions.length];
+        hud[4] = "Base speed (ms): " + timeShiftMilliseconds;
+        boolean hudFreeMode = false;
+        Body hudOrbit = null;
+        int hudChildPointer = -1, hudAmplifier = -1, hudIncrease = -1, hudGravityMode = -1;
+        long hudDays = -1;
+        GravitySimulation hudGravity = null;
+        double hudStepMillis = Double.NaN, hudEnergyDrift = Double.NaN;
+        boolean hudChanged = false;
         while (true) {
-            StdDraw3D.clearOverlay();
-
-            // Move all the planets that do not have parents.
-            for (Body body : rootBodies) {
-                // Move all the planet. If it has children, it will make sure that they move (and the children will do this for their children, etc).
-                body.movePlanet(0, 0, 0);
-            }
-
-            if (!freeMode) {
-                // If we are locked on a planet to orbit it, keep the camera to it.
-                StdDraw3D.Vector3D currentPos = currentOrbit.getPosition();
-                StdDraw3D.setOrbitCenter(currentPos);
-                StdDraw3D.setCameraPosition(currentPos.x, currentPos.y, (currentPos.z + currentOrbit.getRadius() + camDist));
-            }
 
             /*-----Keys moving the camera when not in free-mode-------------------------------------------------------*/
             if (StdDraw3D.isKeyPressed(KeyEvent.VK_F) && !pressedKeys.get(KeyEvent.VK_F)) {
@@ -240,10 +304,10 @@ public class SolarSystemCourseWork2 {
             if (StdDraw3D.isKeyPressed(KeyEvent.VK_UP) && !pressedKeys.get(KeyEvent.VK_UP)) {
                 // Up arrow - Increases the time amplifier by the set increase amount (set by the left/right arrow).
                 //  Makes the simulation move that amount of milliseconds per real-life millisecond, to a max of 1:1000000.
+                //  The new time scale is used straight away, since the planets are placed directly from the simulated time.
                 pressedKeys.put(KeyEvent.VK_UP, true);
                 if (timeAmplifier < 1000000) {
                     timeAmplifier = ((timeAmplifier + increaseAmount) > 1000000) ? 1000000 : (timeAmplifier + increaseAmount);
-                    timeUpdated = false;
                 }
             } else if (StdDraw3D.isKeyPressed(KeyEvent.VK_DOWN) && !pressedKeys.get(KeyEvent.VK_DOWN)) {
                 // Down arrow - Decreases the time amplifier by the set increase amount (set by the left/right arrow).
@@ -251,7 +315,6 @@ public class SolarSystemCourseWork2 {
                 pressedKeys.put(KeyEvent.VK_DOWN, true);
                 if (timeAmplifier > 0) {
                     timeAmplifier = ((timeAmplifier - increaseAmount) < 0) ? 0 : (timeAmplifier - increaseAmount);
-                    timeUpdated = false;
                 }
             } else if (StdDraw3D.isKeyPressed(KeyEvent.VK_RIGHT) && !pressedKeys.get(KeyEvent.VK_RIGHT)) {
                 // Right arrow - Increases the increase amount the timer will be in-/decreased by when pressing the up or down arrow.
@@ -266,15 +329,13 @@ public class SolarSystemCourseWork2 {
                 if (increaseAmount > 1) {
                     increaseAmount = ((increaseAmount / 10) < 1) ? 1 : (increaseAmount / 10);
                 }
-            } else if (StdDraw3D.isKeyPressed(KeyEvent.VK_ENTER)) {
-                // Enter key - Sets the current timescale to the new one, if the user pressed the up or down arrow.
-                //  This has to be pressed to have the new timescale be used and does not work if nothing was changed.
-                if (!timeUpdated) {
-                    for (Body body : rootBodies) {
-                        body.calculateForTime(timeShiftMilliseconds, timeAmplifier);
-                    }
-                    timeUpdated = true;
-                }
+            }
+
+            if (StdDraw3D.isKeyPressed(KeyEvent.VK_G) && !pressedKeys.get(KeyEvent.VK_G)) {
+                // G - Gravity. Switches between moving the planets along their scripted orbits and moving them by the
+                //  gravity they have on each other (all together, then nested), starting from where they are right now.
+                pressedKeys.put(KeyEvent.VK_G, true);
+                gravityMode = (gravityMode + 1) % gravityModeNames.length;
             }
 
             // Check if any of the keys have been released and if so, record that so we know they can be pressed again.
@@ -285,39 +346,288 @@ public class SolarSystemCourseWork2 {
             }
 
             // Show GUI information so the user knows what they are changing and setting.
-            StdDraw3D.setPenColor(Color.WHITE);
-            StdDraw3D.overlayText(10, 95, "[F] Free-flight?: " + freeMode);
-            StdDraw3D.overlayText(10, 89, "[A/D] Current orbit: " + currentOrbit.getName());
-            if (currentOrbit.getParent() != null) {
-                StdDraw3D.overlayText(10, 83, "[S] Parent: " + currentOrbit.getParent().getName());
-            } else {
-                StdDraw3D.overlayText(10, 83, "[S] Parent: No parent");
+            boolean free = freeMode;
+            if (hud[0] == null || free != hudFreeMode) {
+                hud[0] = "[F] Free-flight?: " + free;
+                hudFreeMode = free;
+                hudChanged = true;
             }
-            if (currentOrbit.getChild(0) != null) {
-                StdDraw3D.overlayText(10, 77, "[W (Q/E)] Selected Child: " + currentOrbit.getChild(childPointer).getName() + " (" + (childPointer + 1) + "/" + currentOrbit.getNumChildren() + ")");
-            } else {
-                StdDraw3D.overlayText(10, 77, "[W (Q/E)] First Child: No child planets");
+            Body orbit = currentOrbit;
+            if (orbit != hudOrbit || childPointer != hudChildPointer) {
+                hud[1] = "[A/D] Current orbit: " + orbit.getName();
+                if (orbit.getParent() != null) {
+                    hud[2] = "[S] Parent: " + orbit.getParent().getName();
+                } else {
+                    hud[2] = "[S] Parent: No parent";
+                }
+                if (orbit.getChild(0) != null) {
+                    hud[3] = "[W (Q/E)] Selected Child: " + orbit.getChild(childPointer).getName() + " (" + (childPointer + 1) + "/" + orbit.getNumChildren() + ")";
+                } else {
+                    hud[3] = "[W (Q/E)] First Child: No child planets";
+                }
+                hudOrbit = orbit;
+                hudChildPointer = childPointer;
+                hudChanged = true;
+            }
+
+            if (timeAmplifier != hudAmplifier) {
+                hudAmplifier = timeAmplifier;
+                hud[5] = "[\u2191/\u2193] Amplifier (ms): x" + hudAmplifier;
+                hudChanged = true;
+            }
+            if (increaseAmount != hudIncrease) {
+                hudIncrease = increaseAmount;
+                hud[6] = "[\u2190/\u2192] Increase: +" + hudIncrease;
+                hudChanged = true;
+            }
+            long days = (long) (simTimeMillis / 86400000.0);
+            if (days != hudDays) {
+                hudDays = days;
+                hud[7] = "Simulated days: " + days;
+                hudChanged = true;
+            }
+            GravitySimulation shownGravity = gravity;
+            int mode = gravityMode;
+            if (shownGravity != null) {
+                double stepMillis = shownGravity.getStepMillis();
+                double energyDrift = shownGravity.getEnergyDrift();
+                if (shownGravity != hudGravity || mode != hudGravityMode || stepMillis != hudStepMillis || energyDrift != hudEnergyDrift) {
+                    hud[8] = "[G] Gravity: " + gravityModeNames[mode] + " (step " + String.format("%.1f", stepMillis / 60000.0)
+                            + " min, energy drift " + String.format("%.2e", energyDrift) + ")";
+                    hudStepMillis = stepMillis;
+                    hudEnergyDrift = energyDrift;
+                    hudChanged = true;
+                }
+            } else if (hud[8] == null || hudGravity != null) {
+                hud[8] = "[G] Gravity: off";
+                hudChanged = true;
             }
+            hudGravity = shownGravity;
+            hudGravityMode = mode;
+
+            // Only draw the overlay again when any of its text changed, otherwise show keeps what is on screen.
+            if (hudChanged) {
+                StdDraw3D.clearOverlay();
+                StdDraw3D.setPenColor(Color.WHITE);
+                for (int i = 0; i < hud.length; i++) {
+                    StdDraw3D.overlayText(hudPositions[i][0], hudPositions[i][1], hud[i]);
+                }
+                hudChanged = false;
+            }
+
+            // The planets are moved by the frame callback, so here we only have to check the keys again every so often.
+            StdDraw3D.show(15);
+        }
+    }
 
-            StdDraw3D.overlayText(70, 95, "Base speed (ms): " + timeShiftMilliseconds);
-            StdDraw3D.overlayText(70, 89, "[\u2191/\u2193] Amplifier (ms): x" + timeAmplifier);
-            StdDraw3D.overlayText(70, 83, "[\u2190/\u2192] Increase: +" + increaseAmount);
-            StdDraw3D.overlayText(70, 77, "[Enter] Updated?: " + timeUpdated);
+    /**
+     * Moves the simulation forward by the real time that passed since the last frame and moves all the planets to match.
+     *  Runs on the Java3D behavior thread right before every frame is drawn, so all the planets move together in the same
+     *  frame instead of some of them moving while the frame is being drawn.
+     */
+    private void simulateFrame() {
+        // Run as many fixed steps as fit in the real time that passed since the last frame, each one moving the
+        //  simulated time forward by the amount of time that passes per step at the current time scale.
+        int steps = scheduler.advance();
+        GravitySimulation system = updateGravityMode();
+        for (int i = 0; i < steps; i++) {
+            previousSimTimeMillis = simTimeMillis;
+            simTimeMillis += scheduler.getStepMillis() * timeAmplifier;
+        }
+        if (system != null) {
+            // Gravity picks its own step lengths, so it is moved to the new time all at once, within the step budget.
+            //  If it could not get all the way there, the simulated time is held back to where gravity got to.
+            double gravityTimeMillis = gravityStartMillis + system.getTimeMillis();
+            gravityTimeMillis += system.advance(simTimeMillis - gravityTimeMillis);
+            if (gravityTimeMillis < simTimeMillis) {
+                simTimeMillis = gravityTimeMillis;
+                previousSimTimeMillis = Math.min(previousSimTimeMillis, simTimeMillis);
+            }
+        }
+        // Draw the frame at the moment in between the last two steps that matches the real time right now.
+        double frameTimeMillis = previousSimTimeMillis + scheduler.getAlpha() * (simTimeMillis - previousSimTimeMillis);
+
+        // Calculate where every body is at that moment, then move the shapes of all the planets to match.
+        if (system != null) {
+            // Gravity can only be calculated step by step, so the bodies are drawn where the last step left them.
+            bodyStore.updateSpins(simTimeMillis);
+            system.writeTo(bodyStore);
+        } else if (ephemeris != null && ephemeris.covers(frameTimeMillis)) {
+            bodyStore.updateSpins(frameTimeMillis);
+            ephemeris.apply(bodyStore, frameTimeMillis);
+        } else if (parallelUpdate) {
+            bodyStore.updateParallel(frameTimeMillis, ForkJoinPool.commonPool());
+        } else {
+            bodyStore.update(frameTimeMillis);
+        }
+        for (int i = 0; i < bodyViews.size(); i++) {
+            // Move the shapes of the planet to where the store placed it. Loop by index, as an iterator would have to be allocated.
+            bodyViews.get(i).update();
+        }
+        if (asteroidBelt != null) {
+            asteroidBelt.update(frameTimeMillis, bodyViews.get(0).getBody());
+        }
 
-            // Normally, there is a millisecond between each drawn frame, so that the simulation follows real-time.
-            StdDraw3D.show(timeShiftMilliseconds);
+        if (repositionRequested) {
+            repositionRequested = false;
+            Body orbiting = currentOrbit;
+            // This moves the camera slightly away from the selected planet, so the camera always starts at the same place.
+            StdDraw3D.setCameraPosition(orbiting.getX(), orbiting.getY(), (orbiting.getZ() + orbiting.getRadius() + camDist));
+            StdDraw3D.setCameraOrientation(0, 0, 0);
+            // This makes it so that the user's camera moves around the planet that is selected.
+            StdDraw3D.setOrbitCenter(orbiting.getX(), orbiting.getY(), orbiting.getZ());
+        } else if (!freeMode) {
+            // If we are locked on a planet to orbit it, keep the camera to it.
+            Body orbiting = currentOrbit;
+            StdDraw3D.setOrbitCenter(orbiting.getX(), orbiting.getY(), orbiting.getZ());
+            StdDraw3D.setCameraPosition(orbiting.getX(), orbiting.getY(), (orbiting.getZ() + orbiting.getRadius() + camDist));
+        }
+        StdDraw3D.getCameraFrame(cameraFrame);
+        double projectionScale = StdDraw3D.getProjectionScale();
+        if (textureManager != null) {
+            // Give every planet a texture that fits how big it is drawn from where the camera is now.
+            textureManager.update(cameraFrame[0], cameraFrame[1], cameraFrame[2], projectionScale);
+        }
+        if (labels != null) {
+            labels.update(cameraFrame, projectionScale);
         }
     }
 
     /**
-     * Repositions the camera to be centered to the currently orbited planet, for the locked camera orbit mode.
+     * Helper method that creates or drops the gravity system when the user switched modes. Gravity starts from where the
+     *  bodies are on their scripted orbits at the current simulated time. Only called from the frame callback.
+     * @return GravitySimulation the gravity system to move the bodies with, or null if they follow their scripted orbits.
+     */
+    private static GravitySimulation updateGravityMode() {
+        int mode = gravityMode;
+        if (mode == gravitySystemMode) {
+            return gravity;
+        }
+        if (mode == 1) {
+            NBodySystem system = NBodySystem.fromStore(bodyStore, simTimeMillis, metresPerUnit, ForkJoinPool.commonPool());
+            // Use the adaptive integrator, so close approaches get short steps and quiet stretches long ones.
+            system.setAdaptive(true);
+            system.setMaxStepsPerAdvance(maxGravityStepsPerFrame);
+            gravity = system;
+        } else if (mode == 2) {
+            // Every system takes steps that fit its own orbits, so the step budget only counts the steps of the Sun.
+            NestedGravitySystem system = NestedGravitySystem.fromStore(bodyStore, simTimeMillis, metresPerUnit);
+            system.setMaxStepsPerAdvance(maxGravityStepsPerFrame);
+            gravity = system;
+        } else {
+            gravity = null;
+        }
+        gravityStartMillis = simTimeMillis;
+        gravitySystemMode = mode;
+        return gravity;
+    }
+
+    /**
+     * Repositions the camera to be centered to the currently orbited planet, for the locked camera orbit mode. The camera
+     *  is moved by the frame callback right before the next frame is drawn, so it is never moved from two threads at once.
      */
     private void repositionCamera() {
-        StdDraw3D.Vector3D currentPos = currentOrbit.getPosition();
-        // This moves the camera slightly away from the selected planet, so the camera always starts at the same place.
-        StdDraw3D.setCameraPosition(currentPos.x, currentPos.y, (currentPos.z + currentOrbit.getRadius() + camDist));
-        StdDraw3D.setCameraOrientation(0, 0, 0);
-        // This makes it so that the user's camera moves around the planet that is selected.
-        StdDraw3D.setOrbitCenter(currentPos.x, currentPos.y, currentPos.z);
+        repositionRequested = true;
+    }
+
+    /**
+     * Method that creates all the bodies of our Solar System in the given store. The Sun is added first, after which every
+     *  body is added after its parent, so the Earth is always the third child of the Sun.
+     * Every body also gets its real mass and how much bigger its orbit is drawn than it really is, which are only used
+     *  when the bodies are moved by gravity. The moons are drawn much further from their planets than they really are
+     *  and the outer planets are drawn 1.75 times closer to the Sun.
+     * @param store BodyStore is the store to add the bodies to.
+     * @param views ArrayList<BodyView> is the list to add a view for every body to. Give null to only create the bodies,
+     *  which does not need StdDraw3D (or a display) at all.
+     * @return Body the Sun, which is the parent of all the other bodies.
+     */
+    public static Body createSolarSystem(BodyStore store, ArrayList<BodyView> views) {
+        // The sun doesn't rotate around anything, so it has no parent.
+        Body sun = addBody(store, views, "Sun", (1391000 / 15.0), 0, 0, 576, 0, null, 0, 0, "./assets/textures/2k_sun.jpg", Color.ORANGE);
+        sun.setMass(1.989e30);
+
+        Body mercury = addBody(store, views, "Mercury", 4879, 7, .034, 1407.6, 88, sun, 46, 69.8, "./assets/textures/2k_mercury.jpg", Color.GRAY);
+        mercury.setMass(3.301e23);
+        Body venus = addBody(store, views, "Venus", 12104, 3.4, 177.4, -5832.5, 224.7, sun, 107.5, 108.9, "./assets/textures/2k_venus_atmosphere.jpg", Color.ORANGE);
+        venus.setMass(4.867e24);
+
+        Body earth = addBody(store, views, "Earth", 12756, 0, 23.4, 23.9, 365.2, sun, 147.1, 152.1, "./assets/textures/2k_earth_daymap.jpg", Color.BLUE);
+        earth.setMass(5.972e24);
+        Body moon = addBody(store, views, "Moon", 3475, 5.1, 6.7, 655.7, 27.3, earth, (.363 * 20.0), (.406 * 20.0), "./assets/textures/2k_moon.jpg", Color.WHITE);
+        moon.setMass(7.342e22);
+        moon.setOrbitScale(20.0);
+
+        Body mars = addBody(store, views, "Mars", 6792, 1.9, 25.2, 24.6, 687.0, sun, 206.6, 249.2, "./assets/textures/2k_mars.jpg", Color.RED);
+        mars.setMass(6.417e23);
+
+        Body jupiter = addBody(store, views, "Jupiter", 142984, 1.3, 3.1, 9.9, 4331, sun, (740.5 / 1.75), (816.6 / 1.75), "./assets/textures/2k_jupiter.jpg", Color.YELLOW);
+        jupiter.setMass(1.898e27);
+        jupiter.setOrbitScale(1.0 / 1.75);
+        Body io = addBody(store, views, "Io", 3643, .04, 0, 42.5, 1.8, jupiter, (.420 * 145.0), (.424 * 145.0), "./assets/textures/io.jpg", Color.WHITE);
+        io.setMass(8.932e22);
+        io.setOrbitScale(145.0);
+//        addBody(store, views, "Europa", 3122, .47, 0, 85.2, 3.6, jupiter, (.664 * 110.0), (.678 * 110.0), "./assets/textures/europa.jpg", Color.YELLOW);
+        Body ganymede = addBody(store, views, "Ganymede", 5262, .18, 0, 171.7, 7.2, jupiter, (1.068 * 85.0), (1.072 * 85.0), "./assets/textures/ganymede.jpg", Color.LIGHT_GRAY);
+        ganymede.setMass(1.482e23);
+        ganymede.setOrbitScale(85.0);
+        Body callisto = addBody(store, views, "Callisto", 4821, .19, 0, 400.5, 16.7, jupiter, (1.87 * 60.0), (1.896 * 60.0), "./assets/textures/callisto.jpg", Color.ORANGE);
+        callisto.setMass(1.076e23);
+        callisto.setOrbitScale(60.0);
+
+        Body saturn = addBody(store, views, "Saturn", 120536, 2.5, 26.7, 10.7, 10747, sun, (1352.6 / 1.75), (1514.5 / 1.75), "./assets/textures/2k_saturn.jpg", Color.WHITE);
+        saturn.setMass(5.683e26);
+        saturn.setOrbitScale(1.0 / 1.75);
+        if (views != null) {
+            views.get(views.size() - 1).addRing(180000, 26.7, "./assets/textures/2k_saturn_ring_alpha.png");
+        }
+        Body titan = addBody(store, views, "Titan", 5150, .33, 0, 382.69, 15.945, saturn, (1.222 * 125.0), (1.187 * 125.0), "./assets/textures/titan.jpg", Color.GRAY);
+        titan.setMass(1.345e23);
+        titan.setOrbitScale(125.0);
+
+        Body uranus = addBody(store, views, "Uranus", 51118, .8, 97.8, -17.2, 30689, sun, (2741.3 / 1.75), (3003.6 / 1.75), "./assets/textures/2k_uranus.jpg", Color.CYAN);
+        uranus.setMass(8.681e25);
+        uranus.setOrbitScale(1.0 / 1.75);
+        Body titania = addBody(store, views, "Titania", 1577.8, .08, 0, 208.941, 8.705, uranus, (.436 * 55.0), (.436 * 55.0), null, Color.YELLOW);
+        titania.setMass(3.4e21);
+        titania.setOrbitScale(55.0);
+        Body oberon = addBody(store, views, "Oberon", 1522.8, .07, 0, 323.118, 13.463, uranus, (.584 * 60.0), (.583 * 60.0), null, Color.GRAY);
+        oberon.setMass(3.08e21);
+        oberon.setOrbitScale(60.0);
+
+        Body neptune = addBody(store, views, "Neptune", 49528, 1.8, 28.3, 16.1, 59800, sun, (4444.5 / 1.75), (4545.7 / 1.75), "./assets/textures/2k_neptune.jpg", Color.BLUE);
+        neptune.setMass(1.024e26);
+        neptune.setOrbitScale(1.0 / 1.75);
+        Body pluto = addBody(store, views, "Pluto", 2370, 17.2, 122.5, -153.3, 90560, sun, (4436.8 / 1.75), (7375.9 / 1.75), "./assets/textures/plutomap2k.jpg", Color.LIGHT_GRAY);
+        pluto.setMass(1.303e22);
+        pluto.setOrbitScale(1.0 / 1.75);
+
+        return sun;
+    }
+
+    /**
+     * Helper method that creates a Body in the given store and, if a list of views is given, a view that draws it.
+     * @param textureURL String is the texture of the Body. Give null to draw it as just a coloured sphere.
+     * @return Body the created Body.
+     */
+    private static Body addBody(BodyStore store, ArrayList<BodyView> views, String name, double diameter, double maxAngle, double obliquity, double rotatePeriod, double orbitalPeriod, Body parent, double orbitHeight, double orbitWidth, String textureURL, Color color) {
+        Body body = new Body(store, name, diameter, maxAngle, obliquity, rotatePeriod, orbitalPeriod, parent, orbitHeight, orbitWidth);
+        if (views != null) {
+            BodyView view;
+            if (textureURL == null) {
+                view = new BodyView(body, color);
+            } else if (textureManager != null) {
+                view = new BodyView(body, textureURL, color, textureManager);
+            } else {
+                view = new BodyView(body, textureURL, color);
+            }
+            // Let the Body ride along with its parent, whose view was created before it.
+            for (BodyView parentView : views) {
+                if (parentView.getBody() == parent) {
+                    view.attachTo(parentView);
+                }
+            }
+            views.add(view);
+        }
+        return body;
     }
 }
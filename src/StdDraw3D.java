@@ -23,6 +23,7 @@ import java.io.*;
 import java.net.*;
 import java.awt.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.*;
 import javax.swing.event.*;
 import java.text.*;
@@ -124,6 +125,61 @@ public final class StdDraw3D implements
     private static BufferedImage offscreenImage, onscreenImage;
     private static BufferedImage infoImage;
 
+    // The part of each overlay image that was drawn on since it was last cleared. Only that part
+    // is ever cleared again or drawn over the 3D scene. The onscreen image is swapped and drawn
+    // under the lock, as postRender reads it from the rendering thread.
+    private static final Rectangle offscreenDirty = new Rectangle();
+    private static final Rectangle onscreenDirty  = new Rectangle();
+    private static final Rectangle infoDirty      = new Rectangle();
+    private static final Object overlayLock = new Object();
+
+    // What the info display last showed, so it is only drawn again once that changed.
+    private static String infoText;
+    private static final DecimalFormat INFO_FORMAT = new DecimalFormat(" 0.000;-0.000");
+    private static final Font INFO_FONT = new Font("Courier", Font.PLAIN, 11);
+
+    // The overlay is drawn in commands that are only kept until the next show, then drawn all
+    // together with one graphics per overlay image, made once with the image.
+    private static Graphics2D offscreenGraphics, onscreenGraphics;
+
+    // The operations of the overlay commands, and for every command the object it draws (shape,
+    // text or image), the next command of its segment, and OVERLAY_ARGS numbers in pixels.
+    private static final int OVERLAY_PIXEL = 0, OVERLAY_LINE = 1, OVERLAY_DRAW = 2, OVERLAY_FILL = 3,
+            OVERLAY_DRAW_ELLIPSE = 4, OVERLAY_FILL_ELLIPSE = 5, OVERLAY_DRAW_RECTANGLE = 6,
+            OVERLAY_FILL_RECTANGLE = 7, OVERLAY_TEXT = 8, OVERLAY_IMAGE = 9;
+    private static final int OVERLAY_ARGS = 7;
+    private static int overlayCount;
+    private static int[] overlayOps = new int[64];
+    private static int[] overlayNext = new int[64];
+    private static Object[] overlayRefs = new Object[64];
+    private static double[] overlayArgs = new double[64 * OVERLAY_ARGS];
+    private static final Line2D.Double scratchLine = new Line2D.Double();
+    private static final Ellipse2D.Double scratchEllipse = new Ellipse2D.Double();
+    private static final Rectangle2D.Double scratchRectangle = new Rectangle2D.Double();
+
+    // Every pen color, pen radius and font the overlay was drawn with, with its stroke and font
+    // metrics, so those are only made once. Kept between frames up to MAX_OVERLAY_STATES.
+    private static final int MAX_OVERLAY_STATES = 64;
+    private static int stateCount;
+    private static int lastOverlayState = -1;
+    private static Color[] stateColors = new Color[8];
+    private static float[] stateRadii = new float[8];
+    private static Font[] stateFonts = new Font[8];
+    private static BasicStroke[] stateStrokes = new BasicStroke[8];
+    private static FontMetrics[] stateMetrics = new FontMetrics[8];
+
+    // The commands are drawn in segments of one state each, in the order they were started, so
+    // the state only changes between segments. A command joins the last segment of its state
+    // unless that would draw it below a later segment it overlaps; only MAX_SEGMENT_SCAN later
+    // segments are checked. stateSegments holds the last segment of each state, or -1.
+    private static final int MAX_SEGMENT_SCAN = 16;
+    private static int segmentCount;
+    private static int[] stateSegments = new int[8];
+    private static int[] segmentStates = new int[16];
+    private static int[] segmentHeads = new int[16];
+    private static int[] segmentTails = new int[16];
+    private static double[] segmentBounds = new double[4 * 16];
+
     // Canvas dimensions.
     private static int width;
     private static int height;
@@ -153,6 +209,7 @@ public final class StdDraw3D implements
 
     // Number of triangles per shape.
     private static int numDivisions;
+    private static boolean levelOfDetail = false;
 
     // Mouse states.
     private static boolean mouse1;
@@ -178,6 +235,9 @@ public final class StdDraw3D implements
     private static boolean showedOnce = true;
     private static boolean renderedOnce = false;
 
+    // Called on the behavior thread right before every rendered frame.
+    private static volatile Runnable frameCallback;
+
     /* Final variables for default values. */
     //-------------------------------------------------------------------------
 
@@ -195,6 +255,13 @@ public final class StdDraw3D implements
     private static final double DEFAULT_FOV = 0.9;
     private static final int    DEFAULT_NUM_DIVISIONS = 100;
 
+    // Level of detail for spheres. Level i has numDivisions / 2^i divisions (but at least the minimum) and is
+    // used up to LOD_DISTANCES[i] times its own radius from the viewer. Beyond the last distance the sphere is
+    // smaller than a pixel, so it is drawn as a single point. The skybox always has the fixed amount below.
+    private static final double[] LOD_DISTANCES = {15, 60, 250, 1500};
+    private static final int    MIN_LOD_DIVISIONS = 8;
+    private static final int    BACKGROUND_NUM_DIVISIONS = 48;
+
     // Default clipping distances for rendering.
     private static final double DEFAULT_FRONT_CLIP = 0.01;
     public static double DEFAULT_BACK_CLIP  = 10;
@@ -219,6 +286,23 @@ public final class StdDraw3D implements
     private static final BoundingSphere INFINITE_BOUNDS =
             new BoundingSphere(new Point3d(0.0,0.0,0.0), 1e100);
 
+    // Every texture that was asked for, by image file and format, so each file is only decoded once
+    // and every appearance with that file shares the same Texture. Loaded on the threads below.
+    private static final HashMap<String, CompletableFuture<Texture>> textures = new HashMap<String, CompletableFuture<Texture>>();
+    private static final ExecutorService textureLoaders = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                public Thread newThread (Runnable r) {
+                    Thread thread = new Thread(r, "StdDraw3D texture loader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private static boolean asyncTextures = false;
+
+    // One sphere geometry of radius 1 per number of divisions, shared by every sphere and ellipsoid.
+    // They are scaled to size by their transform, so only their appearance is their own.
+    private static final HashMap<Integer, Geometry> unitSpheres = new HashMap<Integer, Geometry>();
+
     // Axis vectors.
     private static final Vector3D xAxis = new Vector3D(1, 0, 0);
     private static final Vector3D yAxis = new Vector3D(0, 1, 0);
@@ -251,9 +335,23 @@ public final class StdDraw3D implements
 
         numDivisions = DEFAULT_NUM_DIVISIONS;
 
-        onscreenImage  = createBufferedImage();
-        offscreenImage = createBufferedImage();
-        infoImage      = createBufferedImage();
+        synchronized (overlayLock) {
+            onscreenImage  = createBufferedImage();
+            offscreenImage = createBufferedImage();
+            infoImage      = createBufferedImage();
+            onscreenDirty.setBounds(0, 0, 0, 0);
+            offscreenDirty.setBounds(0, 0, 0, 0);
+            infoDirty.setBounds(0, 0, 0, 0);
+            infoText = null;
+
+            if (onscreenGraphics != null) {
+                onscreenGraphics.dispose();
+                offscreenGraphics.dispose();
+            }
+            onscreenGraphics  = createOverlayGraphics(onscreenImage);
+            offscreenGraphics = createOverlayGraphics(offscreenImage);
+            clearOverlayCommands();
+        }
 
         initializeCanvas();
 
@@ -281,6 +379,7 @@ public final class StdDraw3D implements
         offscreenGroup = createBranchGroup();
 
         rootGroup.addChild(onscreenGroup);
+        rootGroup.addChild(createFrameBehaviorGroup());
         rootGroup.addChild(lightGroup);
         rootGroup.addChild(bgGroup);
         rootGroup.addChild(soundGroup);
@@ -371,9 +470,10 @@ public final class StdDraw3D implements
             public void postRender () {
                 J3DGraphics2D graphics = this.getGraphics2D();
 
-                graphics.drawRenderedImage(onscreenImage, new AffineTransform());
-                if (infoDisplay) {
-                    graphics.drawRenderedImage(infoImage, new AffineTransform());
+                // Only draw the parts of the overlay that have anything on them.
+                synchronized (overlayLock) {
+                    drawDirty(graphics, onscreenImage, onscreenDirty);
+                    if (infoDisplay) drawDirty(graphics, infoImage, infoDirty);
                 }
 
                 graphics.flush(false);
@@ -696,11 +796,25 @@ public final class StdDraw3D implements
         TransformGroup tg = new TransformGroup();
         tg.setCapability(TransformGroup.ALLOW_TRANSFORM_READ);
         tg.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+        tg.setCapability(TransformGroup.ALLOW_CHILDREN_READ);
         tg.setPickable(false);
         tg.setCollidable(false);
         return tg;
     }
 
+    /**
+     * Creates a BranchGroup holding the behavior that runs the frame callback.
+     */
+    private static BranchGroup createFrameBehaviorGroup () {
+
+        FrameBehavior behavior = new FrameBehavior();
+        behavior.setSchedulingBounds(INFINITE_BOUNDS);
+
+        BranchGroup bg = createBranchGroup();
+        bg.addChild(behavior);
+        return bg;
+    }
+
     /**
      * Creates a blank Background with the proper capabilities.
      *
@@ -724,10 +838,41 @@ public final class StdDraw3D implements
      * @throws RuntimeException if the file could not be read.
      */
     private static Texture createTexture (String imageURL) {
+        try {
+            return textureFuture(imageURL, "RGBA").join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the texture from the given image file in the given format, shared with every earlier call
+     * for the same file and format. With asynchronous textures on, the file is decoded on the texture
+     * loader threads and the returned future completes once it is done. Otherwise it is decoded right away.
+     */
+    private static synchronized CompletableFuture<Texture> textureFuture (final String imageURL, final String format) {
+        String key = imageURL + "|" + format;
+        CompletableFuture<Texture> future = textures.get(key);
+        if (future == null || future.isCompletedExceptionally()) {
+            if (asyncTextures) {
+                future = CompletableFuture.supplyAsync(() -> loadTexture(imageURL, format), textureLoaders);
+            } else {
+                future = CompletableFuture.completedFuture(loadTexture(imageURL, format));
+            }
+            textures.put(key, future);
+        }
+        return future;
+    }
+
+    /**
+     * Decodes the given image file into a new texture.
+     */
+    private static Texture loadTexture (String imageURL, String format) {
 
         TextureLoader loader;
         try {
-            loader = new TextureLoader(imageURL, "RGBA", TextureLoader.Y_UP, new Container());
+            loader = new TextureLoader(imageURL, format, TextureLoader.Y_UP, new Container());
         } catch (Exception e) {
             throw new RuntimeException ("Could not read from the file '" + imageURL + "'");
         }
@@ -765,14 +910,30 @@ public final class StdDraw3D implements
         pa.setCullFace(PolygonAttributes.CULL_NONE);
         ap.setPolygonAttributes(pa);
 
+        // Filled shapes can get a (different) texture later on, with Shape.setTexture.
+        if (fill) {
+            ap.setCapability(Appearance.ALLOW_TEXTURE_WRITE);
+            ap.setCapability(Appearance.ALLOW_TEXTURE_ATTRIBUTES_WRITE);
+        }
+
+        Texture texture = null;
+        CompletableFuture<Texture> pending = null;
         if (imageURL != null) {
 
-            Texture texture = createTexture(imageURL);
             TextureAttributes texAttr = new TextureAttributes();
             texAttr.setTextureMode(TextureAttributes.MODULATE);
+            ap.setTextureAttributes(texAttr);
 
+            if (asyncTextures) {
+                pending = textureFuture(imageURL, "RGBA");
+                if (pending.isDone() && !pending.isCompletedExceptionally()) {
+                    texture = pending.join();
+                    pending = null;
+                }
+            } else {
+                texture = createTexture(imageURL);
+            }
             ap.setTexture(texture);
-            ap.setTextureAttributes(texAttr);
         }
 
         Color3f col = new Color3f(penColor);
@@ -810,6 +971,23 @@ public final class StdDraw3D implements
         ap.setPointAttributes(poa);
         ap.setColoringAttributes(ca);
 
+        if (pending != null) {
+            // Until the texture arrives, the shape is drawn in the pen color. Then the texture is shown as it is.
+            ap.setCapability(Appearance.ALLOW_TEXTURE_WRITE);
+            final Appearance target = ap;
+            final String url = imageURL;
+            pending.whenComplete((loaded, error) -> {
+                if (error != null) {
+                    System.err.println("Could not read from the file '" + url + "'");
+                    return;
+                }
+                Material textured = target.getMaterial();
+                textured.setAmbientColor(new Color3f(WHITE));
+                textured.setDiffuseColor(new Color3f(WHITE));
+                target.setTexture(loaded);
+            });
+        }
+
         return ap;
     }
 
@@ -867,6 +1045,50 @@ public final class StdDraw3D implements
         return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
     }
 
+    /**
+     * Grows the given dirty rectangle to also cover the given area, clipped to the canvas.
+     */
+    private static void markDirty (Rectangle dirty, double x, double y, double w, double h) {
+        int x0 = Math.max(0, (int) Math.floor(x));
+        int y0 = Math.max(0, (int) Math.floor(y));
+        int x1 = Math.min(width,  (int) Math.ceil(x + w));
+        int y1 = Math.min(height, (int) Math.ceil(y + h));
+        if (x1 <= x0 || y1 <= y0) return;
+
+        if (dirty.isEmpty()) {
+            dirty.setBounds(x0, y0, x1 - x0, y1 - y0);
+        } else {
+            int dx1 = Math.max(x1, dirty.x + dirty.width);
+            int dy1 = Math.max(y1, dirty.y + dirty.height);
+            dirty.x = Math.min(x0, dirty.x);
+            dirty.y = Math.min(y0, dirty.y);
+            dirty.width  = dx1 - dirty.x;
+            dirty.height = dy1 - dirty.y;
+        }
+    }
+
+    /**
+     * Makes the dirty part of the given image fully transparent again and empties the rectangle.
+     */
+    private static void clearDirty (BufferedImage image, Rectangle dirty) {
+        if (dirty.isEmpty()) return;
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(dirty.x, dirty.y, dirty.width, dirty.height);
+        g.dispose();
+        dirty.setBounds(0, 0, 0, 0);
+    }
+
+    /**
+     * Draws only the dirty part of the given image onto the given graphics.
+     */
+    private static void drawDirty (Graphics2D g, BufferedImage image, Rectangle dirty) {
+        if (dirty.isEmpty()) return;
+        int x1 = dirty.x + dirty.width;
+        int y1 = dirty.y + dirty.height;
+        g.drawImage(image, dirty.x, dirty.y, x1, y1, dirty.x, dirty.y, x1, y1, null);
+    }
+
     /** Converts a Vector3D to a Vector3d. */
     private static Vector3d createVector3d (Vector3D v) {
         return new Vector3d(v.x, v.y, v.z);
@@ -951,6 +1173,20 @@ public final class StdDraw3D implements
         initialize();
     }
 
+    /**
+     * Gets the width of the drawing area.
+     *
+     * @return The width as a number of pixels.
+     */
+    public static int getCanvasWidth () { return width; }
+
+    /**
+     * Gets the height of the drawing area.
+     *
+     * @return The height as a number of pixels.
+     */
+    public static int getCanvasHeight () { return height; }
+
     /**
      * Sets the default scale for all three dimensions.
      */
@@ -1194,6 +1430,48 @@ public final class StdDraw3D implements
      */
     public static int  getNumDivisions () { return numDivisions; }
 
+    /**
+     * Turns level of detail for spheres on or off. When on, spheres drawn after this switch to fewer
+     * divisions the further they are from the viewer, and to a single point in the pen color once
+     * they are smaller than a pixel.
+     *
+     * @param enabled True to draw spheres with level of detail.
+     */
+    public static void setLevelOfDetail (boolean enabled) { levelOfDetail = enabled; }
+
+    /**
+     * Gets whether spheres are drawn with level of detail.
+     *
+     * @return True if level of detail is on.
+     */
+    public static boolean getLevelOfDetail () { return levelOfDetail; }
+
+    /**
+     * Turns loading textures in the background on or off. When on, shapes with a texture are drawn
+     * right away in the pen color, and get their texture as soon as it is decoded. Once it arrives,
+     * the texture is shown as it is instead of being tinted by the pen color.
+     *
+     * @param enabled True to load textures in the background.
+     */
+    public static void setAsyncTextures (boolean enabled) { asyncTextures = enabled; }
+
+    /**
+     * Gets whether textures are loaded in the background.
+     *
+     * @return True if textures are loaded in the background.
+     */
+    public static boolean getAsyncTextures () { return asyncTextures; }
+
+    /**
+     * Gets how big things are drawn in perspective projection: something of size s at distance d
+     * from the camera is drawn about s / d times this many pixels wide.
+     *
+     * @return The amount of pixels per unit of size per unit of distance.
+     */
+    public static double getProjectionScale () {
+        return width / (2 * Math.tan(view.getFieldOfView() / 2));
+    }
+
     /**
      * Gets the current camera mode.
      *
@@ -1774,7 +2052,7 @@ public final class StdDraw3D implements
 
         Sphere sphere = new Sphere(1.1f, Sphere.GENERATE_NORMALS
                 | Sphere.GENERATE_NORMALS_INWARD
-                | Sphere.GENERATE_TEXTURE_COORDS, numDivisions);
+                | Sphere.GENERATE_TEXTURE_COORDS, BACKGROUND_NUM_DIVISIONS);
 
         Appearance ap = sphere.getAppearance();
 
@@ -2036,7 +2314,8 @@ public final class StdDraw3D implements
      */
     public static void clearOverlay () {
         clearOverlay = true;
-        offscreenImage = createBufferedImage();
+        clearOverlayCommands();
+        clearDirty(offscreenImage, offscreenDirty);
     }
 
     /**
@@ -2071,6 +2350,37 @@ public final class StdDraw3D implements
         //showedOnce = true;
     }
 
+    /**
+     * Sets the code that runs right before every frame is rendered. It runs on the Java3D behavior
+     * thread, so all the changes it makes to shapes show up together in the same frame instead of
+     * landing halfway through drawing one. Keep it short, as the frame waits for it to finish.
+     *
+     * @param callback The code to run every frame, or null to stop running anything.
+     */
+    public static void setFrameCallback (Runnable callback) {
+        frameCallback = callback;
+    }
+
+    /**
+     * Behavior that wakes up on every frame and runs the frame callback, if one was set.
+     */
+    private static class FrameBehavior extends Behavior {
+
+        private final WakeupOnElapsedFrames wakeup = new WakeupOnElapsedFrames(0);
+
+        public void initialize () {
+            wakeupOn(wakeup);
+        }
+
+        // Behavior declares this with a raw Enumeration, so it can only be overridden as one.
+        @SuppressWarnings("rawtypes")
+        public void processStimulus (Enumeration criteria) {
+            Runnable callback = frameCallback;
+            if (callback != null) callback.run();
+            wakeupOn(wakeup);
+        }
+    }
+
     /**
      * Allows for camera navigation of a scene without redrawing. Useful when
      * drawing a complicated scene once and then exploring without redrawing.
@@ -2110,15 +2420,36 @@ public final class StdDraw3D implements
         pause(time);
     }
 
+    /**
+     * Shows what was drawn on the overlay since the last call, drawing its commands first. After
+     * clearOverlay the two overlay images are swapped, otherwise the new drawings are added onto
+     * what is shown. Either way only dirty rectangles are copied or cleared, and nothing happens
+     * if nothing was drawn or cleared.
+     */
     private static void renderOverlay () {
+        drawOverlayCommands();
         if (clearOverlay) {
             clearOverlay = false;
-            onscreenImage = offscreenImage;
-        } else {
-            Graphics2D graphics = (Graphics2D) onscreenImage.getGraphics();
-            graphics.drawRenderedImage(offscreenImage, new AffineTransform());
+            synchronized (overlayLock) {
+                BufferedImage shown = onscreenImage;
+                onscreenImage = offscreenImage;
+                offscreenImage = shown;
+                Graphics2D shownGraphics = onscreenGraphics;
+                onscreenGraphics = offscreenGraphics;
+                offscreenGraphics = shownGraphics;
+
+                int x = onscreenDirty.x, y = onscreenDirty.y, w = onscreenDirty.width, h = onscreenDirty.height;
+                onscreenDirty.setBounds(offscreenDirty);
+                offscreenDirty.setBounds(x, y, w, h);
+            }
+        } else if (!offscreenDirty.isEmpty()) {
+            synchronized (overlayLock) {
+                drawDirty(onscreenGraphics, offscreenImage, offscreenDirty);
+                markDirty(onscreenDirty, offscreenDirty.x, offscreenDirty.y, offscreenDirty.width, offscreenDirty.height);
+            }
         }
-        offscreenImage = createBufferedImage();
+        // The offscreen image is drawn on again from scratch.
+        clearDirty(offscreenImage, offscreenDirty);
     }
 
     public static void show3D () { show3D(0); }
@@ -2186,10 +2517,9 @@ public final class StdDraw3D implements
      * Draws a sphere at (x, y, z) with radius r, axial rotations (xA, yA, zA), and a texture from imageURL.
      */
     public static Shape sphere (double x, double y, double z, double r, double xA, double yA, double zA, String imageURL) {
-        Vector3f dimensions = createVector3f(0, 0, r);
-        Sphere sphere = new Sphere(dimensions.z, PRIMFLAGS, numDivisions);
-        sphere.setAppearance(createAppearance(imageURL, true));
-        return primitive(sphere, x, y, z, new Vector3d(xA, yA, zA), null);
+        Appearance ap = createAppearance(imageURL, true);
+        Node sphere = levelOfDetail ? lodSphere(ap) : unitSphere(ap);
+        return primitive(sphere, x, y, z, new Vector3d(xA, yA, zA), new Vector3d(r, r, r));
     }
 
     /**
@@ -2204,10 +2534,8 @@ public final class StdDraw3D implements
      */
     public static Shape wireSphere (double x, double y, double z, double r, double xA, double yA, double zA) {
 
-        Vector3f dimensions = createVector3f(0, 0, r);
-        Sphere sphere = new Sphere(dimensions.z, PRIMFLAGS, numDivisions);
-        sphere.setAppearance(createAppearance(null, false));
-        return primitive(sphere, x, y, z, new Vector3d(xA, yA, zA), null);
+        Shape3D sphere = unitSphere(createAppearance(null, false));
+        return primitive(sphere, x, y, z, new Vector3d(xA, yA, zA), new Vector3d(r, r, r));
     }
 
     //*********************************************************************************************
@@ -2237,8 +2565,7 @@ public final class StdDraw3D implements
      * Draws an ellipsoid at (x, y, z) with dimensions (w, h, d), axial rotations (xA, yA, zA), and a texture from imageURL.
      */
     public static Shape ellipsoid (double x, double y, double z, double w, double h, double d, double xA, double yA, double zA, String imageURL) {
-        Sphere sphere = new Sphere(1, PRIMFLAGS, numDivisions);
-        sphere.setAppearance(createAppearance(imageURL, true));
+        Shape3D sphere = unitSphere(createAppearance(imageURL, true));
         return primitive(sphere, x, y, z, new Vector3d(xA, yA, zA), new Vector3d(w, h, d));
     }
 
@@ -2248,14 +2575,12 @@ public final class StdDraw3D implements
     public static Shape ellipsoidSP(double x, double y, double z, double w, double h, double d, double xA, double yA, double zA, String imageURL) {
         Appearance ap = createAppearance(imageURL, true);
 
-        Sphere sphere = new Sphere(1, PRIMFLAGS, numDivisions);
-
         TransparencyAttributes ta = new TransparencyAttributes();
         ta.setTransparencyMode(ta.BLENDED);
         ta.setTransparency (0.1f);
         ap.setTransparencyAttributes(ta);
 
-        sphere.setAppearance(ap);
+        Shape3D sphere = unitSphere(ap);
         return primitive(sphere, x, y, z, new Vector3d(xA, yA, zA), new Vector3d(w, h, d));
     }
 
@@ -2271,8 +2596,7 @@ public final class StdDraw3D implements
      */
     public static Shape wireEllipsoid (double x, double y, double z, double w, double h, double d, double xA, double yA, double zA) {
 
-        Sphere sphere = new Sphere(1, PRIMFLAGS, numDivisions);
-        sphere.setAppearance(createAppearance(null, false));
+        Shape3D sphere = unitSphere(createAppearance(null, false));
         return primitive(sphere, x, y, z, new Vector3d(xA, yA, zA), new Vector3d(w, h, d));
     }
 
@@ -2498,12 +2822,77 @@ public final class StdDraw3D implements
 
     //*********************************************************************************************
 
+    /**
+     * Creates a sphere of radius 1 with the given appearance. Its geometry is shared with every
+     * other sphere with the current number of divisions, so it should be scaled to size.
+     */
+    private static Shape3D unitSphere (Appearance ap) {
+        Shape3D shape = createShape3D(unitSphereGeometry(numDivisions));
+        shape.setAppearance(ap);
+        return shape;
+    }
+
+    /**
+     * Creates a sphere of radius 1 with the given appearance that switches between its levels of
+     * detail by how many times its own radius it is away from the viewer. As it sits inside the
+     * scale transform, the distances of the DistanceLOD are in radii of the sphere.
+     */
+    private static Group lodSphere (Appearance ap) {
+
+        Switch levels = new Switch(0);
+        levels.setCapability(Switch.ALLOW_SWITCH_READ);
+        levels.setCapability(Switch.ALLOW_SWITCH_WRITE);
+        levels.setCapability(Group.ALLOW_CHILDREN_READ);
+
+        float[] distances = new float[LOD_DISTANCES.length];
+        for (int i = 0; i < LOD_DISTANCES.length; i++) {
+            Shape3D level = createShape3D(unitSphereGeometry(Math.max(MIN_LOD_DIVISIONS, numDivisions >> i)));
+            level.setAppearance(ap);
+            levels.addChild(level);
+            distances[i] = (float) LOD_DISTANCES[i];
+        }
+
+        // The impostor, a single point in the middle of the sphere.
+        PointArray point = new PointArray(1, PointArray.COORDINATES);
+        point.setCoordinate(0, new Point3f(0, 0, 0));
+        Shape3D impostor = createShape3D(point);
+        Appearance impostorAp = createAppearance(null, true);
+        impostorAp.clearCapability(Appearance.ALLOW_TEXTURE_WRITE);
+        impostor.setAppearance(impostorAp);
+        levels.addChild(impostor);
+
+        DistanceLOD lod = new DistanceLOD(distances);
+        lod.addSwitch(levels);
+        lod.setSchedulingBounds(INFINITE_BOUNDS);
+
+        Group group = new Group();
+        group.setCapability(Group.ALLOW_CHILDREN_READ);
+        group.addChild(levels);
+        group.addChild(lod);
+        return group;
+    }
+
+    /**
+     * Returns the shared sphere geometry of radius 1 with the given number of divisions.
+     * It is only built the first time that number of divisions is asked for.
+     */
+    private static synchronized Geometry unitSphereGeometry (int divisions) {
+        Geometry geometry = unitSpheres.get(divisions);
+        if (geometry == null) {
+            Sphere sphere = new Sphere(1, PRIMFLAGS, divisions);
+            geometry = sphere.getShape(Sphere.BODY).getGeometry();
+            unitSpheres.put(divisions, geometry);
+        }
+        return geometry;
+    }
+
     /**
      * Draws a Java 3D Primitive object at (x, y, z) with axial rotations (xA, yA, zA).
      */
-    private static Shape primitive (Primitive shape, double x, double y, double z, Vector3d angles, Vector3d scales) {
+    private static Shape primitive (Node shape, double x, double y, double z, Vector3d angles, Vector3d scales) {
 
-        shape.setCapability(Primitive.ENABLE_APPEARANCE_MODIFY);
+        if (shape instanceof Primitive)
+            shape.setCapability(Primitive.ENABLE_APPEARANCE_MODIFY);
         shape.setPickable(false);
         shape.setCollidable(false);
 
@@ -2520,8 +2909,7 @@ public final class StdDraw3D implements
             angles.scale(Math.PI / 180);
             transform.setEuler( angles);
         }
-        Vector3f vector = createVector3f(x, y, z);
-        transform.setTranslation(vector);
+        transform.setTranslation(new Vector3d(x, y, z));
         tgShape.setTransform(transform);
         tgShape.addChild(tgScale);
 
@@ -2581,6 +2969,77 @@ public final class StdDraw3D implements
         return customShape(shape);
     }
 
+    /**
+     * Draws a set of points whose coordinates are read straight from the given array (x, y and z of
+     * every point after each other) instead of being copied, so they can be moved every frame without
+     * creating any objects. Only change the array from within a GeometryUpdater passed to updateData
+     * of the returned geometry. The bounds are never recalculated, so the points are never culled.
+     */
+    public static GeometryArray pointsByReference (float[] coordinates, int count) {
+
+        PointArray geom = new PointArray(count, PointArray.COORDINATES | PointArray.BY_REFERENCE);
+        geom.setCapability(GeometryArray.ALLOW_REF_DATA_READ);
+        geom.setCapability(GeometryArray.ALLOW_REF_DATA_WRITE);
+        geom.setCoordRefFloat(coordinates);
+
+        Shape3D shape = createShape3D(geom);
+        shape.setBoundsAutoCompute(false);
+        shape.setBounds(INFINITE_BOUNDS);
+
+        shape(shape);
+        return geom;
+    }
+
+    /**
+     * Draws a set of textured quads whose coordinates, colors and texture coordinates are read
+     * straight from the given arrays instead of being copied, like pointsByReference. Every four
+     * vertices make a quad that shows its part of the texture multiplied by the vertex colors,
+     * without lighting and blended by the alpha of both. They are drawn over what is behind them
+     * without hiding anything, which suits labels and other flat overlays within the scene.
+     *
+     * @param coordinates The x, y and z of every vertex after each other.
+     * @param colors The red, green, blue and alpha of every vertex after each other.
+     * @param texCoords The s and t of every vertex after each other.
+     * @param count The amount of vertices, a multiple of 4.
+     * @param texture The texture to draw the quads with.
+     */
+    public static GeometryArray quadsByReference (float[] coordinates, float[] colors, float[] texCoords, int count, Texture texture) {
+
+        QuadArray geom = new QuadArray(count, QuadArray.COORDINATES | QuadArray.COLOR_4
+                | QuadArray.TEXTURE_COORDINATE_2 | QuadArray.BY_REFERENCE);
+        geom.setCapability(GeometryArray.ALLOW_REF_DATA_READ);
+        geom.setCapability(GeometryArray.ALLOW_REF_DATA_WRITE);
+        geom.setCoordRefFloat(coordinates);
+        geom.setColorRefFloat(colors);
+        geom.setTexCoordRefFloat(0, texCoords);
+
+        Appearance ap = new Appearance();
+        TextureAttributes texAttr = new TextureAttributes();
+        texAttr.setTextureMode(TextureAttributes.MODULATE);
+        ap.setTextureAttributes(texAttr);
+        ap.setTexture(texture);
+
+        ap.setTransparencyAttributes(new TransparencyAttributes(TransparencyAttributes.BLENDED, 0.0f));
+        RenderingAttributes ra = new RenderingAttributes();
+        ra.setDepthBufferWriteEnable(false);
+        ap.setRenderingAttributes(ra);
+        PolygonAttributes pa = new PolygonAttributes();
+        pa.setCullFace(PolygonAttributes.CULL_NONE);
+        ap.setPolygonAttributes(pa);
+
+        Shape3D shape = createShape3D(geom);
+        shape.setAppearance(ap);
+        shape.setBoundsAutoCompute(false);
+        shape.setBounds(INFINITE_BOUNDS);
+
+        TransformGroup transGroup = new TransformGroup();
+        transGroup.addChild(shape);
+        BranchGroup bg = createBranchGroup();
+        bg.addChild(transGroup);
+        offscreenGroup.addChild(bg);
+        return geom;
+    }
+
     //*********************************************************************************************
 
     /**
@@ -2631,6 +3090,41 @@ public final class StdDraw3D implements
         return customShape(shape);
     }
 
+    /**
+     * Draws several separate sets of connected lines as one shape, so they all cost a single draw
+     * call. The first set is drawn through the first stripLengths[0] vertices, the second set through
+     * the next stripLengths[1] vertices, and so on. Every set has its own color from stripColors.
+     */
+    public static Shape lines (double[] x, double[] y, double[] z, int[] stripLengths, Color[] stripColors) {
+
+        int count = 0;
+        for (int length : stripLengths)
+            count += length;
+
+        float[] coords = new float[3 * count];
+        float[] colors = new float[4 * count];
+        for (int i = 0, strip = 0, end = stripLengths[0]; i < count; i++) {
+            while (i == end) end += stripLengths[++strip];
+            coords[3 * i]     = (float) x[i];
+            coords[3 * i + 1] = (float) y[i];
+            coords[3 * i + 2] = (float) z[i];
+            Color c = stripColors[strip];
+            colors[4 * i]     = c.getRed() / 255f;
+            colors[4 * i + 1] = c.getGreen() / 255f;
+            colors[4 * i + 2] = c.getBlue() / 255f;
+            colors[4 * i + 3] = c.getAlpha() / 255f;
+        }
+
+        GeometryArray geom = new LineStripArray
+                (count, LineArray.COORDINATES | LineArray.COLOR_4, stripLengths);
+        geom.setCoordinates(0, coords);
+        geom.setColors(0, colors);
+
+        Shape3D shape = createShape3D(geom);
+
+        return customShape(shape);
+    }
+
     /**
      * Draws a cylindrical tube of radius r from vertex (x1, y1, z1) to vertex (x2, y2, z2).
      */
@@ -3100,7 +3594,43 @@ public final class StdDraw3D implements
      * Draws one pixel at (x, y).
      */
     public static void overlayPixel (double x, double y) {
-        getGraphics2D(offscreenImage).fillRect((int) Math.round(scaleX(x)), (int) Math.round(scaleY(y)), 1, 1);
+        int xs = (int) Math.round(scaleX(x));
+        int ys = (int) Math.round(scaleY(y));
+        int i = overlayCommand(OVERLAY_PIXEL, null, xs, ys, 1, 1);
+        if (i < 0) return;
+        overlayArgs[i]     = xs;
+        overlayArgs[i + 1] = ys;
+    }
+
+    /**
+     * Draws the outline of the given shape on the overlay with the pen.
+     */
+    private static void overlayDraw (java.awt.Shape shape) {
+        Rectangle2D b = shape.getBounds2D();
+        double m = penRadius / 2.0 + 1;
+        overlayCommand(OVERLAY_DRAW, shape, b.getX() - m, b.getY() - m, b.getWidth() + 2 * m, b.getHeight() + 2 * m);
+    }
+
+    /**
+     * Fills the given shape on the overlay with the pen color.
+     */
+    private static void overlayFill (java.awt.Shape shape) {
+        Rectangle2D b = shape.getBounds2D();
+        overlayCommand(OVERLAY_FILL, shape, b.getX() - 1, b.getY() - 1, b.getWidth() + 2, b.getHeight() + 2);
+    }
+
+    /**
+     * Draws or fills the ellipse or rectangle with the given pixel bounds on the overlay, without
+     * creating a shape for it.
+     */
+    private static void overlayBox (int op, double xs, double ys, double ws, double hs) {
+        double m = (op == OVERLAY_DRAW_ELLIPSE || op == OVERLAY_DRAW_RECTANGLE) ? penRadius / 2.0 + 1 : 1;
+        int i = overlayCommand(op, null, xs - m, ys - m, ws + 2 * m, hs + 2 * m);
+        if (i < 0) return;
+        overlayArgs[i]     = xs;
+        overlayArgs[i + 1] = ys;
+        overlayArgs[i + 2] = ws;
+        overlayArgs[i + 3] = hs;
     }
 
     /**
@@ -3109,14 +3639,22 @@ public final class StdDraw3D implements
     public static void overlayPoint (double x, double y) {
         float r = penRadius;
         if (r <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).fill(new Ellipse2D.Double(scaleX(x) - r/2, scaleY(y) - r/2, r, r));
+        else overlayBox(OVERLAY_FILL_ELLIPSE, scaleX(x) - r/2, scaleY(y) - r/2, r, r);
     }
 
     /**
      * Draws a line from (x0, y0) to (x1, y1).
      */
     public static void overlayLine (double x0, double y0, double x1, double y1) {
-        getGraphics2D(offscreenImage).draw(new Line2D.Double(scaleX(x0), scaleY(y0), scaleX(x1), scaleY(y1)));
+        double xs0 = scaleX(x0), ys0 = scaleY(y0), xs1 = scaleX(x1), ys1 = scaleY(y1);
+        double m = penRadius / 2.0 + 1;
+        int i = overlayCommand(OVERLAY_LINE, null, Math.min(xs0, xs1) - m, Math.min(ys0, ys1) - m,
+                Math.abs(xs1 - xs0) + 2 * m, Math.abs(ys1 - ys0) + 2 * m);
+        if (i < 0) return;
+        overlayArgs[i]     = xs0;
+        overlayArgs[i + 1] = ys0;
+        overlayArgs[i + 2] = xs1;
+        overlayArgs[i + 3] = ys1;
     }
 
     /**
@@ -3130,7 +3668,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).draw(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_DRAW_ELLIPSE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3144,7 +3682,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).fill(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_FILL_ELLIPSE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3158,7 +3696,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*semiMajorAxis);
         double hs = factorY(2*semiMinorAxis);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).draw(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_DRAW_ELLIPSE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3172,7 +3710,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*semiMajorAxis);
         double hs = factorY(2*semiMinorAxis);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).fill(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_FILL_ELLIPSE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3186,7 +3724,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).draw(new Arc2D.Double(xs - ws/2, ys - hs/2, ws, hs, angle1, angle2 - angle1, Arc2D.OPEN));
+        else overlayDraw(new Arc2D.Double(xs - ws/2, ys - hs/2, ws, hs, angle1, angle2 - angle1, Arc2D.OPEN));
     }
 
     /**
@@ -3199,7 +3737,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).draw(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_DRAW_RECTANGLE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3212,7 +3750,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).fill(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_FILL_RECTANGLE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3226,7 +3764,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*halfWidth);
         double hs = factorY(2*halfHeight);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).draw(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_DRAW_RECTANGLE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3240,7 +3778,7 @@ public final class StdDraw3D implements
         double ws = factorX(2*halfWidth);
         double hs = factorY(2*halfHeight);
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else getGraphics2D(offscreenImage).fill(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else overlayBox(OVERLAY_FILL_RECTANGLE, xs - ws/2, ys - hs/2, ws, hs);
     }
 
     /**
@@ -3253,7 +3791,7 @@ public final class StdDraw3D implements
         for (int i = 0; i < N; i++)
             path.lineTo((float) scaleX(x[i]), (float) scaleY(y[i]));
         path.closePath();
-        getGraphics2D(offscreenImage).draw(path);
+        overlayDraw(path);
     }
 
     /**
@@ -3266,7 +3804,7 @@ public final class StdDraw3D implements
         for (int i = 0; i < N; i++)
             path.lineTo((float) scaleX(x[i]), (float) scaleY(y[i]));
         path.closePath();
-        getGraphics2D(offscreenImage).fill(path);
+        overlayFill(path);
     }
 
     /**
@@ -3274,13 +3812,11 @@ public final class StdDraw3D implements
      * This is useful for titles and HUD-style text.
      */
     public static void overlayText (double x, double y, String text) {
-        Graphics2D graphics = getGraphics2D(offscreenImage);
-        FontMetrics metrics = graphics.getFontMetrics();
+        FontMetrics metrics = stateMetrics[overlayState()];
         double xs = scaleX(x);
         double ys = scaleY(y);
         int ws = metrics.stringWidth(text);
-        int hs = metrics.getDescent();
-        graphics.drawString(text, (float) (xs - ws/2.0), (float) (ys + hs));
+        overlayText(text, metrics, xs - ws/2.0, ys + metrics.getDescent(), ws);
     }
 
     /**
@@ -3288,41 +3824,51 @@ public final class StdDraw3D implements
      * rotated by the specified number of degrees.
      */
     public static void overlayText (double x, double y, String text, double degrees) {
-        Graphics2D graphics = getGraphics2D(offscreenImage);
-        FontMetrics metrics = graphics.getFontMetrics();
+        FontMetrics metrics = stateMetrics[overlayState()];
         double xs = scaleX(x);
         double ys = scaleY(y);
         int ws = metrics.stringWidth(text);
-        int hs = metrics.getDescent();
-        graphics.rotate(Math.toRadians(-degrees), xs, ys);
-        graphics.drawString(text, (float) (xs - ws/2.0), (float) (ys + hs));
-        graphics.rotate(Math.toRadians(+degrees), xs, ys);
+        // Turned text can end up anywhere around (x, y), so take the circle it turns in.
+        double r = Math.hypot(ws / 2.0, metrics.getHeight()) + 1;
+        int i = overlayCommand(OVERLAY_TEXT, text, xs - r, ys - r, 2 * r, 2 * r);
+        if (i < 0) return;
+        overlayArgs[i]     = xs - ws/2.0;
+        overlayArgs[i + 1] = ys + metrics.getDescent();
+        overlayArgs[i + 4] = xs;
+        overlayArgs[i + 5] = ys;
+        overlayArgs[i + 6] = Math.toRadians(-degrees);
     }
 
     /**
      * Write the given text string in the current font, left-aligned at (x, y).
      */
     public static void overlayTextLeft (double x, double y, String text) {
-        Graphics2D graphics = getGraphics2D(offscreenImage);
-        FontMetrics metrics = graphics.getFontMetrics();
+        FontMetrics metrics = stateMetrics[overlayState()];
         double xs = scaleX(x);
         double ys = scaleY(y);
-        int ws = metrics.stringWidth(text);
-        int hs = metrics.getDescent();
-        graphics.drawString(text, (float) (xs), (float) (ys + hs));
+        overlayText(text, metrics, xs, ys + metrics.getDescent(), metrics.stringWidth(text));
     }
 
     /**
      * Write the given text string in the current font, right-aligned at (x, y).
      */
     public static void overlayTextRight (double x, double y, String text) {
-        Graphics2D graphics = getGraphics2D(offscreenImage);
-        FontMetrics metrics = graphics.getFontMetrics();
+        FontMetrics metrics = stateMetrics[overlayState()];
         double xs = scaleX(x);
         double ys = scaleY(y);
         int ws = metrics.stringWidth(text);
-        int hs = metrics.getDescent();
-        graphics.drawString(text, (float) (xs - ws), (float) (ys + hs));
+        overlayText(text, metrics, xs - ws, ys + metrics.getDescent(), ws);
+    }
+
+    /**
+     * Writes text of the given width on the overlay, with its baseline starting at (x, y).
+     */
+    private static void overlayText (String text, FontMetrics metrics, double x, double y, int w) {
+        int i = overlayCommand(OVERLAY_TEXT, text, x - 1, y - metrics.getAscent() - 1, w + 2, metrics.getHeight() + 2);
+        if (i < 0) return;
+        overlayArgs[i]     = x;
+        overlayArgs[i + 1] = y;
+        overlayArgs[i + 6] = 0;
     }
 
     /**
@@ -3335,7 +3881,7 @@ public final class StdDraw3D implements
         int ws = image.getWidth(null);
         int hs = image.getHeight(null);
         if (ws < 0 || hs < 0) throw new RuntimeException("image " + s + " is corrupt");
-        getGraphics2D(offscreenImage).drawImage(image, (int) Math.round(xs - ws/2.0), (int) Math.round(ys - hs/2.0), null);
+        overlayImage(image, Math.round(xs - ws/2.0), Math.round(ys - hs/2.0), -1, -1, xs, ys, 0);
     }
 
     /**
@@ -3349,11 +3895,7 @@ public final class StdDraw3D implements
         int ws = image.getWidth(null);
         int hs = image.getHeight(null);
         if (ws < 0 || hs < 0) throw new RuntimeException("image " + s + " is corrupt");
-
-        Graphics2D graphics = getGraphics2D(offscreenImage);
-        graphics.rotate(Math.toRadians(-degrees), xs, ys);
-        graphics.drawImage(image, (int) Math.round(xs - ws/2.0), (int) Math.round(ys - hs/2.0), null);
-        graphics.rotate(Math.toRadians(+degrees), xs, ys);
+        overlayImage(image, Math.round(xs - ws/2.0), Math.round(ys - hs/2.0), -1, -1, xs, ys, Math.toRadians(-degrees));
     }
 
     /**
@@ -3369,12 +3911,7 @@ public final class StdDraw3D implements
         double hs = factorY(h);
         if (ws < 0 || hs < 0) throw new RuntimeException("image " + s + " is corrupt");
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
-        else {
-            getGraphics2D(offscreenImage).drawImage(image, (int) Math.round(xs - ws/2.0),
-                    (int) Math.round(ys - hs/2.0),
-                    (int) Math.round(ws),
-                    (int) Math.round(hs), null);
-        }
+        else overlayImage(image, Math.round(xs - ws/2.0), Math.round(ys - hs/2.0), Math.round(ws), Math.round(hs), xs, ys, 0);
     }
 
     /**
@@ -3390,13 +3927,32 @@ public final class StdDraw3D implements
         if (ws < 0 || hs < 0) throw new RuntimeException("image " + s + " is corrupt");
         if (ws <= 1 && hs <= 1) overlayPixel(x, y);
 
-        Graphics2D graphics = getGraphics2D(offscreenImage);
-        graphics.rotate(Math.toRadians(-degrees), xs, ys);
-        graphics.drawImage(image, (int) Math.round(xs - ws/2.0),
-                (int) Math.round(ys - hs/2.0),
-                (int) Math.round(ws),
-                (int) Math.round(hs), null);
-        graphics.rotate(Math.toRadians(+degrees), xs, ys);
+        overlayImage(image, Math.round(xs - ws/2.0), Math.round(ys - hs/2.0), Math.round(ws), Math.round(hs), xs, ys, Math.toRadians(-degrees));
+    }
+
+    /**
+     * Draws the given image on the overlay at (x, y) in pixels, rescaled to w-by-h unless w is
+     * negative, and turned by the given angle in radians around (xs, ys).
+     */
+    private static void overlayImage (Image image, double x, double y, double w, double h, double xs, double ys, double radians) {
+        double ws = (w < 0) ? image.getWidth(null)  : w;
+        double hs = (h < 0) ? image.getHeight(null) : h;
+        int i;
+        if (radians == 0) {
+            i = overlayCommand(OVERLAY_IMAGE, image, x, y, ws + 1, hs + 1);
+        } else {
+            // A turned picture stays within the circle through its corners.
+            double r = Math.hypot(ws, hs) / 2 + 1;
+            i = overlayCommand(OVERLAY_IMAGE, image, xs - r, ys - r, 2 * r, 2 * r);
+        }
+        if (i < 0) return;
+        overlayArgs[i]     = x;
+        overlayArgs[i + 1] = y;
+        overlayArgs[i + 2] = w;
+        overlayArgs[i + 3] = h;
+        overlayArgs[i + 4] = xs;
+        overlayArgs[i + 5] = ys;
+        overlayArgs[i + 6] = radians;
     }
 
     /**
@@ -3425,13 +3981,12 @@ public final class StdDraw3D implements
         return icon.getImage();
     }
 
-    private static Graphics2D getGraphics2D (BufferedImage image) {
+    /**
+     * Creates the graphics an overlay image is drawn with for as long as it exists.
+     */
+    private static Graphics2D createOverlayGraphics (BufferedImage image) {
 
-        Graphics2D graphics = (Graphics2D) image.getGraphics();
-        graphics.setColor(penColor);
-        graphics.setFont(font);
-        BasicStroke stroke = new BasicStroke(penRadius, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-        graphics.setStroke(stroke);
+        Graphics2D graphics = image.createGraphics();
 
         //if (getAntiAliasing())
         graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -3439,38 +3994,203 @@ public final class StdDraw3D implements
         return graphics;
     }
 
-    private static void infoDisplay () {
+    /**
+     * Gives the index of the current pen color, pen radius and font in the overlay states, adding
+     * them as a new state if they were not used before.
+     */
+    private static int overlayState () {
+        if (lastOverlayState >= 0 && isOverlayState(lastOverlayState)) return lastOverlayState;
+        for (int s = 0; s < stateCount; s++)
+            if (isOverlayState(s)) return lastOverlayState = s;
 
-        if (!infoDisplay) {
-            infoImage = createBufferedImage();
-            return;
+        if (stateCount == stateColors.length) {
+            int n = 2 * stateCount;
+            stateColors   = Arrays.copyOf(stateColors, n);
+            stateRadii    = Arrays.copyOf(stateRadii, n);
+            stateFonts    = Arrays.copyOf(stateFonts, n);
+            stateStrokes  = Arrays.copyOf(stateStrokes, n);
+            stateMetrics  = Arrays.copyOf(stateMetrics, n);
+            stateSegments = Arrays.copyOf(stateSegments, n);
         }
+        int s = stateCount++;
+        stateColors[s]   = penColor;
+        stateRadii[s]    = penRadius;
+        stateFonts[s]    = font;
+        stateStrokes[s]  = new BasicStroke(penRadius, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        stateMetrics[s]  = offscreenGraphics.getFontMetrics(font);
+        stateSegments[s] = -1;
+        return lastOverlayState = s;
+    }
 
-        BufferedImage bi = createBufferedImage();
-        Graphics2D g = (Graphics2D) bi.getGraphics();
-        g.setFont(new Font("Courier", Font.PLAIN, 11));
-        g.setStroke(new BasicStroke(
-                1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+    /**
+     * Tells whether the given overlay state is the current pen color, pen radius and font.
+     */
+    private static boolean isOverlayState (int s) {
+        return stateRadii[s] == penRadius
+                && (stateColors[s] == penColor || stateColors[s].equals(penColor))
+                && (stateFonts[s] == font || stateFonts[s].equals(font));
+    }
 
-        double center = (min + max) / 2;
-        double r  = zoom;
-        double b = zoom * 0.1f;
+    /**
+     * Adds an overlay command with the current state covering the given pixel bounds, to be drawn
+     * by the next renderOverlay, and grows the dirty rectangle over it. Commands fully off the
+     * canvas are left out.
+     *
+     * @return The index of the first number of the command in overlayArgs, or -1 if left out.
+     */
+    private static int overlayCommand (int op, Object ref, double x, double y, double w, double h) {
+        if (x + w <= 0 || y + h <= 0 || x >= width || y >= height) return -1;
+        markDirty(offscreenDirty, x, y, w, h);
+
+        int state = overlayState();
+        int i = overlayCount++;
+        if (i == overlayOps.length) {
+            overlayOps  = Arrays.copyOf(overlayOps, 2 * i);
+            overlayNext = Arrays.copyOf(overlayNext, 2 * i);
+            overlayRefs = Arrays.copyOf(overlayRefs, 2 * i);
+            overlayArgs = Arrays.copyOf(overlayArgs, 2 * i * OVERLAY_ARGS);
+        }
+        overlayOps[i]  = op;
+        overlayRefs[i] = ref;
+        overlayNext[i] = -1;
+
+        // Join the last segment of the same state, unless a later segment overlaps the command,
+        // as then it would be drawn below something that was drawn before it.
+        int segment = stateSegments[state];
+        if (segment >= 0 && segmentCount - 1 - segment > MAX_SEGMENT_SCAN) segment = -1;
+        for (int j = segment + 1; segment >= 0 && j < segmentCount; j++) {
+            int b = 4 * j;
+            if (x < segmentBounds[b + 2] && x + w > segmentBounds[b]
+                    && y < segmentBounds[b + 3] && y + h > segmentBounds[b + 1]) segment = -1;
+        }
+
+        if (segment < 0) {
+            if (segmentCount == segmentStates.length) {
+                int n = 2 * segmentCount;
+                segmentStates = Arrays.copyOf(segmentStates, n);
+                segmentHeads  = Arrays.copyOf(segmentHeads, n);
+                segmentTails  = Arrays.copyOf(segmentTails, n);
+                segmentBounds = Arrays.copyOf(segmentBounds, 4 * n);
+            }
+            segment = segmentCount++;
+            segmentStates[segment] = state;
+            segmentHeads[segment]  = i;
+            stateSegments[state]   = segment;
+            int b = 4 * segment;
+            segmentBounds[b]     = x;
+            segmentBounds[b + 1] = y;
+            segmentBounds[b + 2] = x + w;
+            segmentBounds[b + 3] = y + h;
+        } else {
+            overlayNext[segmentTails[segment]] = i;
+            int b = 4 * segment;
+            segmentBounds[b]     = Math.min(segmentBounds[b], x);
+            segmentBounds[b + 1] = Math.min(segmentBounds[b + 1], y);
+            segmentBounds[b + 2] = Math.max(segmentBounds[b + 2], x + w);
+            segmentBounds[b + 3] = Math.max(segmentBounds[b + 3], y + h);
+        }
+        segmentTails[segment] = i;
+        return i * OVERLAY_ARGS;
+    }
+
+    /**
+     * Draws all overlay commands added since the last call onto the offscreen image, one segment
+     * at a time, only setting the color, stroke or font when they change.
+     */
+    private static void drawOverlayCommands () {
+        Graphics2D g = offscreenGraphics;
+        Color color = null;
+        Stroke stroke = null;
+        Font shownFont = null;
+
+        for (int segment = 0; segment < segmentCount; segment++) {
+            int s = segmentStates[segment];
+            if (stateColors[s]  != color)     g.setColor(color = stateColors[s]);
+            if (stateStrokes[s] != stroke)    g.setStroke(stroke = stateStrokes[s]);
+            if (stateFonts[s]   != shownFont) g.setFont(shownFont = stateFonts[s]);
+
+            for (int i = segmentHeads[segment]; i != -1; i = overlayNext[i]) {
+                int a = i * OVERLAY_ARGS;
+                double x = overlayArgs[a], y = overlayArgs[a + 1], w = overlayArgs[a + 2], h = overlayArgs[a + 3];
+                switch (overlayOps[i]) {
+                    case OVERLAY_PIXEL:
+                        g.fillRect((int) x, (int) y, 1, 1);
+                        break;
+                    case OVERLAY_LINE:
+                        scratchLine.setLine(x, y, w, h);
+                        g.draw(scratchLine);
+                        break;
+                    case OVERLAY_DRAW_ELLIPSE:
+                        scratchEllipse.setFrame(x, y, w, h);
+                        g.draw(scratchEllipse);
+                        break;
+                    case OVERLAY_FILL_ELLIPSE:
+                        scratchEllipse.setFrame(x, y, w, h);
+                        g.fill(scratchEllipse);
+                        break;
+                    case OVERLAY_DRAW_RECTANGLE:
+                        scratchRectangle.setFrame(x, y, w, h);
+                        g.draw(scratchRectangle);
+                        break;
+                    case OVERLAY_FILL_RECTANGLE:
+                        scratchRectangle.setFrame(x, y, w, h);
+                        g.fill(scratchRectangle);
+                        break;
+                    case OVERLAY_DRAW:
+                        g.draw((java.awt.Shape) overlayRefs[i]);
+                        break;
+                    case OVERLAY_FILL:
+                        g.fill((java.awt.Shape) overlayRefs[i]);
+                        break;
+                    case OVERLAY_TEXT:
+                    case OVERLAY_IMAGE:
+                        double radians = overlayArgs[a + 6];
+                        if (radians != 0) g.rotate(radians, overlayArgs[a + 4], overlayArgs[a + 5]);
+                        if (overlayOps[i] == OVERLAY_TEXT) g.drawString((String) overlayRefs[i], (float) x, (float) y);
+                        else if (w < 0) g.drawImage((Image) overlayRefs[i], (int) x, (int) y, null);
+                        else g.drawImage((Image) overlayRefs[i], (int) x, (int) y, (int) w, (int) h, null);
+                        if (radians != 0) g.rotate(-radians, overlayArgs[a + 4], overlayArgs[a + 5]);
+                        break;
+                }
+            }
+        }
+        clearOverlayCommands();
+    }
+
+    /**
+     * Forgets all overlay commands added since they were last drawn. The states are kept for the
+     * next frame, unless there are so many that looking them up would get slow.
+     */
+    private static void clearOverlayCommands () {
+        Arrays.fill(overlayRefs, 0, overlayCount, null);
+        for (int segment = 0; segment < segmentCount; segment++)
+            stateSegments[segmentStates[segment]] = -1;
+        overlayCount = 0;
+        segmentCount = 0;
 
-        DecimalFormat df = new DecimalFormat(" 0.000;-0.000");
+        if (stateCount > MAX_OVERLAY_STATES) {
+            Arrays.fill(stateColors, 0, stateCount, null);
+            Arrays.fill(stateFonts, 0, stateCount, null);
+            Arrays.fill(stateStrokes, 0, stateCount, null);
+            Arrays.fill(stateMetrics, 0, stateCount, null);
+            stateCount = 0;
+            lastOverlayState = -1;
+        }
+    }
+
+    /**
+     * Draws the camera position, rotation and mode with a crosshair into the info image. Called
+     * every time the events are processed, so it only draws again once any of it changed.
+     */
+    private static void infoDisplay () {
+
+        if (!infoDisplay) return;
 
         Vector3D pos = camera.getPosition();
-        String s = "(" + df.format(pos.x) + "," + df.format(pos.y) + "," + df.format(pos.z) + ")";
-        g.setColor(BLACK);
-        g.drawString("Position: " + s, 21, 26);
-        g.setColor(LIGHT_GRAY);
-        g.drawString("Position: " + s, 20, 25);
+        String s = "Position: (" + INFO_FORMAT.format(pos.x) + "," + INFO_FORMAT.format(pos.y) + "," + INFO_FORMAT.format(pos.z) + ")";
 
         Vector3D rot = camera.getOrientation();
-        String s2 = "(" + df.format(rot.x) + "," + df.format(rot.y) + "," + df.format(rot.z) + ")";
-        g.setColor(BLACK);
-        g.drawString("Rotation: " + s2, 21, 41);
-        g.setColor(LIGHT_GRAY);
-        g.drawString("Rotation: " + s2, 20, 40);
+        String s2 = "Rotation: (" + INFO_FORMAT.format(rot.x) + "," + INFO_FORMAT.format(rot.y) + "," + INFO_FORMAT.format(rot.z) + ")";
 
         String mode;
         if (cameraMode == ORBIT_MODE)        mode = "Camera: ORBIT_MODE";
@@ -3480,16 +4200,51 @@ public final class StdDraw3D implements
         else if (cameraMode == FIXED_MODE)        mode = "Camera: FIXED_MODE";
         else throw new RuntimeException("Unknown camera mode!");
 
-        g.setColor(BLACK);
-        g.drawString(mode, 21, 56);
-        g.setColor(LIGHT_GRAY);
-        g.drawString(mode, 20, 55);
-
+        double center = (min + max) / 2;
+        double b = zoom * 0.1f;
         double d = b / 4;
-        g.draw(new Line2D.Double(scaleX(d + center), scaleY(0 + center), scaleX(-d + center), scaleY(0 + center)));
-        g.draw(new Line2D.Double(scaleX(0 + center), scaleY(d + center), scaleX( 0 + center), scaleY(-d + center)));
 
-        infoImage = bi;
+        // The crosshair moves with the zoom and scale, so those are part of what is shown too.
+        String text = s + s2 + mode + d + center;
+        if (text.equals(infoText)) return;
+        infoText = text;
+
+        synchronized (overlayLock) {
+            clearDirty(infoImage, infoDirty);
+
+            Graphics2D g = infoImage.createGraphics();
+            g.setFont(INFO_FONT);
+            g.setStroke(new BasicStroke(
+                    1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            FontMetrics metrics = g.getFontMetrics();
+
+            g.setColor(BLACK);
+            g.drawString(s, 21, 26);
+            g.setColor(LIGHT_GRAY);
+            g.drawString(s, 20, 25);
+
+            g.setColor(BLACK);
+            g.drawString(s2, 21, 41);
+            g.setColor(LIGHT_GRAY);
+            g.drawString(s2, 20, 40);
+
+            g.setColor(BLACK);
+            g.drawString(mode, 21, 56);
+            g.setColor(LIGHT_GRAY);
+            g.drawString(mode, 20, 55);
+
+            int textWidth = Math.max(metrics.stringWidth(s), Math.max(metrics.stringWidth(s2), metrics.stringWidth(mode)));
+            markDirty(infoDirty, 19, 25 - metrics.getAscent() - 1, textWidth + 3, 31 + metrics.getHeight() + 2);
+
+            Line2D.Double horizontal = new Line2D.Double(scaleX(d + center), scaleY(0 + center), scaleX(-d + center), scaleY(0 + center));
+            Line2D.Double vertical = new Line2D.Double(scaleX(0 + center), scaleY(d + center), scaleX( 0 + center), scaleY(-d + center));
+            g.draw(horizontal);
+            g.draw(vertical);
+            g.dispose();
+
+            Rectangle2D cross = horizontal.getBounds2D().createUnion(vertical.getBounds2D());
+            markDirty(infoDirty, cross.getX() - 2, cross.getY() - 2, cross.getWidth() + 4, cross.getHeight() + 4);
+        }
     }
     /* ***************************************************************
      *                    Saving/Loading Methods                  *
@@ -3613,6 +4368,19 @@ public final class StdDraw3D implements
         return new Shape(combinedGroup, combinedTransform);
     }
 
+    /**
+     * Creates an empty shape, which other shapes can be attached to with Shape.attach so they all
+     * move along with it.
+     */
+    public static Shape group () {
+
+        BranchGroup bg = createBranchGroup();
+        TransformGroup tg = new TransformGroup();
+        bg.addChild(tg);
+        offscreenGroup.addChild(bg);
+        return new Shape(bg, tg);
+    }
+
     /**
      * Returns an identical copy of a Shape that can be controlled independently.
      * Much more efficient than redrawing a specific shape or model.
@@ -3636,6 +4404,12 @@ public final class StdDraw3D implements
 
         private TransformGroup tg;
 
+        // Reused by the methods that are called every frame, so that they do not allocate.
+        private final Transform3D scratchTransform = new Transform3D();
+        private final Transform3D scratchRotation = new Transform3D();
+        private final Vector3d scratchVector = new Vector3d();
+        private final Matrix3d scratchMatrix = new Matrix3d();
+
         private Transformable (TransformGroup tg0) {
             this.tg = tg0;
         }
@@ -3749,9 +4523,9 @@ public final class StdDraw3D implements
         public void move (Vector3D move) {
             Transform3D t = getTransform();
 
-            Vector3f r = new Vector3f();
+            Vector3d r = new Vector3d();
             t.get(r);
-            r.add(createVector3f(move));
+            r.add(createVector3d(move));
             t.setTranslation(r);
 
             setTransform(t);
@@ -3766,15 +4540,63 @@ public final class StdDraw3D implements
         }
 
         public void setPosition (double x, double y, double z) {
-            setPosition(new Vector3D(x, y, z));
+            tg.getTransform(scratchTransform);
+
+            scratchVector.set(x, y, z);
+            scratchTransform.setTranslation(scratchVector);
+
+            tg.setTransform(scratchTransform);
         }
 
-        public void setPosition (Vector3D pos) {
-            Transform3D t = getTransform();
+        /**
+         * Sets the position to (x, y, z) and the orientation to (xAngle, yAngle, zAngle), then turns the object by
+         * spin degrees around its own y-axis, the same as rotateRelative(0, spin, 0) would. Keeps the scale. Does it
+         * all with a single transform write and without allocating, so it can be called for many shapes every frame.
+         */
+        public void setPose (double x, double y, double z, double xAngle, double yAngle, double zAngle, double spin) {
+            tg.getTransform(scratchTransform);
+            double scale = scratchTransform.getScale();
 
-            t.setTranslation(createVector3f(pos));
+            scratchVector.set(Math.toRadians(xAngle), Math.toRadians(yAngle), Math.toRadians(zAngle));
+            scratchTransform.setEuler(scratchVector);
+            scratchRotation.rotY(Math.toRadians(spin));
+            scratchTransform.mul(scratchRotation);
 
-            setTransform(t);
+            scratchVector.set(x, y, z);
+            scratchTransform.setTranslation(scratchVector);
+            if (scale != 1.0) scratchTransform.setScale(scale);
+
+            tg.setTransform(scratchTransform);
+        }
+
+        public void setPosition (Vector3D pos) {
+            setPosition(pos.x, pos.y, pos.z);
+        }
+
+        /**
+         * Writes the position of the object followed by the directions of its own x, y and z-axes
+         * into the first 12 values of the given array, without allocating.
+         */
+        public void getFrame (double[] frame) {
+            tg.getTransform(scratchTransform);
+            scratchTransform.get(scratchVector);
+            scratchTransform.getRotationScale(scratchMatrix);
+            Matrix3d m = scratchMatrix;
+
+            // Take out any scale by hand, as Matrix3d.normalize allocates: x is the first column made
+            // unit length, y the second column made square to x and unit length, and z = x cross y.
+            double xx = m.m00, xy = m.m10, xz = m.m20;
+            double length = Math.sqrt(xx*xx + xy*xy + xz*xz);
+            xx /= length; xy /= length; xz /= length;
+            double dot = xx*m.m01 + xy*m.m11 + xz*m.m21;
+            double yx = m.m01 - dot*xx, yy = m.m11 - dot*xy, yz = m.m21 - dot*xz;
+            length = Math.sqrt(yx*yx + yy*yy + yz*yz);
+            yx /= length; yy /= length; yz /= length;
+
+            frame[0] = scratchVector.x;  frame[1] = scratchVector.y;  frame[2] = scratchVector.z;
+            frame[3] = xx; frame[4] = xy; frame[5] = xz;
+            frame[6] = yx; frame[7] = yy; frame[8] = yz;
+            frame[9] = xy*yz - xz*yy; frame[10] = xz*yx - xx*yz; frame[11] = xx*yy - xy*yx;
         }
 
         public Vector3D getPosition () {
@@ -3932,6 +4754,14 @@ public final class StdDraw3D implements
         }
     }
 
+    /**
+     * Writes the position of the camera followed by the directions it sees as right, up and
+     * backward into the first 12 values of the given array, without allocating.
+     */
+    public static void getCameraFrame (double[] frame) {
+        camera.getFrame(frame);
+    }
+
     public static Vector3D getCameraPosition () {
         return camera.getPosition();
     }
@@ -3945,7 +4775,7 @@ public final class StdDraw3D implements
     }
 
     public static void setCameraPosition (double x, double y, double z) {
-        setCameraPosition(new Vector3D(x, y, z));
+        camera.setPosition(x, y, z);
     }
 
     public static void setCameraPosition (Vector3D position) {
@@ -4053,6 +4883,8 @@ public final class StdDraw3D implements
 
         private BranchGroup bg;
         private TransformGroup tg;
+        // The shape this shape is attached to, or null if it is drawn on its own.
+        private Shape parent;
 
         private Shape (BranchGroup bg, TransformGroup tg) {
             super(tg);
@@ -4060,6 +4892,22 @@ public final class StdDraw3D implements
             this.tg = tg;
             tg.setCapability(TransformGroup.ALLOW_TRANSFORM_READ);
             tg.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+            tg.setCapability(TransformGroup.ALLOW_CHILDREN_READ);
+            tg.setCapability(TransformGroup.ALLOW_CHILDREN_WRITE);
+            tg.setCapability(TransformGroup.ALLOW_CHILDREN_EXTEND);
+        }
+
+        /**
+         * Attaches the given shape to this one. From then on the position and orientation of the
+         * given shape are relative to this shape, so it moves, turns and scales along with it
+         * without being written to itself.
+         *
+         * @param child The shape to attach.
+         */
+        public void attach (Shape child) {
+            child.hide();
+            child.parent = this;
+            tg.addChild(child.bg);
         }
 
         public void scale (double scale) {
@@ -4081,13 +4929,18 @@ public final class StdDraw3D implements
         //         }
 
         public void hide () {
-            offscreenGroup.removeChild(bg);
-            onscreenGroup.removeChild(bg);
+            if (parent != null) {
+                parent.tg.removeChild(bg);
+            } else {
+                offscreenGroup.removeChild(bg);
+                onscreenGroup.removeChild(bg);
+            }
         }
 
         public void unhide () {
             hide();
-            offscreenGroup.addChild(bg);
+            if (parent != null) parent.tg.addChild(bg);
+            else                offscreenGroup.addChild(bg);
         }
 
         public void match (Shape s) {
@@ -4123,6 +4976,35 @@ public final class StdDraw3D implements
             }
         }
 
+        /**
+         * Sets the texture of the filled parts of this shape, shown as it is instead of tinted by
+         * the color of the shape. Points and lines (like the impostor of a sphere) are left alone.
+         *
+         * @param texture The texture to show.
+         */
+        public void setTexture (Texture texture) {
+            setTexture(tg, texture);
+        }
+
+        private void setTexture (Group g, Texture texture) {
+            for (int i = 0; i < g.numChildren(); i++) {
+                Node child = g.getChild(i);
+                if (child instanceof Shape3D) {
+                    Appearance ap = ((Shape3D)child).getAppearance();
+                    if (ap.getCapability(Appearance.ALLOW_TEXTURE_WRITE)) {
+                        TextureAttributes texAttr = new TextureAttributes();
+                        texAttr.setTextureMode(TextureAttributes.MODULATE);
+                        ap.setTextureAttributes(texAttr);
+                        ap.setTexture(texture);
+                        ap.getMaterial().setAmbientColor(new Color3f(WHITE));
+                        ap.getMaterial().setDiffuseColor(new Color3f(WHITE));
+                    }
+                } else if (child instanceof Group) {
+                    setTexture((Group)child, texture);
+                }
+            }
+        }
+
         private void setColor (Appearance ap, Color c) {
             Material m = ap.getMaterial();
             m.setAmbientColor(new Color3f(c));
@@ -0,0 +1,399 @@
+import com.sun.j3d.utils.image.TextureLoader;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.media.j3d.Texture;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class that gives the textured bodies a texture that fits how big they are drawn, within a set budget of texture memory.
+ *  Every texture is loaded at a power of two width that is just big enough for the amount of pixels the body covers,
+ *  with a full chain of mip levels under it so it does not shimmer when drawn smaller. Maps without transparency are
+ *  stored as RGB instead of RGBA, a quarter less memory. Textures that no body uses anymore are kept until the budget
+ *  runs out, then dropped least recently used first. Textures are decoded and scaled in the background, the body keeps
+ *  showing what it had until the new texture is ready.
+ */
+public class TextureManager {
+    // The smallest width a texture is loaded at, so bodies that are only a few pixels big do not keep reloading.
+    private static final int MIN_WIDTH = 64;
+    // A texture is only swapped for a smaller one once it is this many times wider than it needs to be, so a body that
+    //  is drawn at about the size of a level does not keep switching between two levels.
+    private static final int SHRINK_FACTOR = 4;
+    // A texture wraps around the whole sphere, so it needs about pi texels per pixel of the drawn diameter.
+    private static final double TEXELS_PER_PIXEL = Math.PI;
+
+    /**
+     * Class of a loaded texture, with what it costs in memory and how many bodies show it right now.
+     */
+    private static class Entry {
+        private final Texture texture;
+        private final long bytes;
+        private int users = 0;
+
+        private Entry(Texture texture, long bytes) {
+            this.texture = texture;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Class of a textured shape that is managed, holding the texture it shows and the one being loaded for it.
+     */
+    public class Handle {
+        private final StdDraw3D.Shape shape;
+        private final String imageURL;
+        private final Body body;
+        // The texture on the shape now, and its width. 0 while the shape has none yet.
+        private Entry shown = null;
+        private int shownWidth = 0;
+        // The width being loaded in the background, 0 when nothing is, and the memory reserved for it. Only the last
+        //  requested load is shown.
+        private int loadingWidth = 0;
+        private long reservedBytes = 0;
+        // The width last asked for that did not fit in the budget, 0 if none. It is not asked for again until some
+        //  memory is freed, as it would only be cut down to the same width again.
+        private int cappedWidth = 0;
+
+        private Handle(StdDraw3D.Shape shape, String imageURL, Body body) {
+            this.shape = shape;
+            this.imageURL = imageURL;
+            this.body = body;
+        }
+
+        public int getShownWidth() {
+            return shownWidth;
+        }
+    }
+
+    private final long budgetBytes;
+    // The memory of the loaded textures plus that of the textures being loaded, which is reserved when they are requested.
+    private long usedBytes = 0;
+    // The loaded textures by file and width, in the order they were last used in (least recently used first).
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // The full width, height and whether it is opaque (1) or not (0) of every image read so far.
+    private final HashMap<String, int[]> imageInfo = new HashMap<>();
+    // The images that could not be loaded, which are not tried again.
+    private final HashSet<String> failed = new HashSet<>();
+    private final ArrayList<Handle> handles = new ArrayList<>();
+    private final ExecutorService loaders;
+
+    /**
+     * Method that creates a manager that keeps its textures within the given budget. The budget is only ever exceeded
+     *  when even the smallest texture of every body does not fit.
+     * @param budgetBytes long is the amount of bytes all textures together may take, mip levels included.
+     */
+    public TextureManager(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("The texture budget has to be bigger than 0 bytes!");
+        }
+        this.budgetBytes = budgetBytes;
+        this.loaders = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "TextureManager");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method that puts the given shape under this manager, which from then on gives it the given image as texture, at a
+     *  resolution that fits how big the given body is drawn. The shape keeps its colour until the first texture arrives.
+     * @param shape StdDraw3D.Shape is the filled shape to texture.
+     * @param imageURL String is the image file to texture it with.
+     * @param body Body is the body the shape is drawn for, which decides its position and size.
+     * @return Handle the handle of the managed shape.
+     */
+    public synchronized Handle manage(StdDraw3D.Shape shape, String imageURL, Body body) {
+        Handle handle = new Handle(shape, imageURL, body);
+        handles.add(handle);
+        // Start at the smallest width, so something is shown quickly. The first update raises it where needed.
+        request(handle, MIN_WIDTH);
+        return handle;
+    }
+
+    /**
+     * Method that checks for every managed shape whether its texture still fits how big it is drawn, and starts loading
+     *  a bigger or smaller one where it does not. Called every frame, so it does not allocate anything unless a texture
+     *  has to change.
+     * @param cameraX double is the x coordinate of the camera.
+     * @param cameraY double is the y coordinate of the camera.
+     * @param cameraZ double is the z coordinate of the camera.
+     * @param projectionScale double is the amount of pixels per unit of size per unit of distance, see
+     *                        StdDraw3D.getProjectionScale.
+     */
+    public synchronized void update(double cameraX, double cameraY, double cameraZ, double projectionScale) {
+        // Loop by index, as an iterator would have to be allocated.
+        for (int i = 0; i < handles.size(); i++) {
+            Handle handle = handles.get(i);
+            double dx = handle.body.getX() - cameraX;
+            double dy = handle.body.getY() - cameraY;
+            double dz = handle.body.getZ() - cameraZ;
+            // Inside the body the distance is taken as its radius, so it is as big as it can be.
+            double radius = handle.body.getRadius();
+            double distance = Math.max(Math.sqrt(dx * dx + dy * dy + dz * dz), radius);
+            double pixels = 2 * radius / distance * projectionScale;
+
+            int width = fitWidth(handle.imageURL, pixels * TEXELS_PER_PIXEL);
+            int current = (handle.loadingWidth != 0) ? handle.loadingWidth : handle.shownWidth;
+            if (width != handle.cappedWidth && (width > current || width * SHRINK_FACTOR <= current)) {
+                request(handle, width);
+            }
+        }
+    }
+
+    /**
+     * Helper method that gives the power of two width for the given amount of texels, between the smallest width and the
+     *  full width of the image. As long as the image was not read yet its full width is not known, so it stays at the
+     *  smallest width until the first texture has been loaded.
+     */
+    private int fitWidth(String imageURL, double texels) {
+        int width = MIN_WIDTH;
+        int[] info = imageInfo.get(imageURL);
+        if (info == null) {
+            return width;
+        }
+        while (width < texels && width * 2 <= info[0]) {
+            width *= 2;
+        }
+        return width;
+    }
+
+    /**
+     * Helper method that gives the amount of bytes a texture of the given image at the given width takes, mip levels
+     *  included (a third on top of the texture itself). As long as the image was not read yet, it is taken to be twice
+     *  as wide as it is high and to have transparency, like most maps of planets.
+     */
+    private long textureBytes(String imageURL, int width) {
+        int[] info = imageInfo.get(imageURL);
+        long height = (info != null) ? Math.max(1, (long)width * info[1] / info[0]) : Math.max(1, width / 2);
+        int bytesPerTexel = (info != null && info[2] == 1) ? 3 : 4;
+        return width * height * bytesPerTexel * 4 / 3;
+    }
+
+    /**
+     * Helper method that starts loading the texture of the given width for the given handle. If it does not fit in the
+     *  budget, even after dropping the textures no body uses, the width is halved until it does.
+     */
+    private void request(Handle handle, int wanted) {
+        if (failed.contains(handle.imageURL)) {
+            return;
+        }
+        // The texture shown now is dropped once the new one is shown, so its memory counts as free if only this uses it.
+        //  The same goes for the texture being loaded now, as it will not be shown anymore.
+        long freed = (handle.shown != null && handle.shown.users == 1) ? handle.shown.bytes : 0;
+        freed += handle.reservedBytes;
+        int width = wanted;
+        while (width > MIN_WIDTH && usedBytes - freed + textureBytes(handle.imageURL, width) > budgetBytes) {
+            if (!evictUnused()) {
+                width /= 2;
+            }
+        }
+        handle.cappedWidth = (width < wanted) ? wanted : 0;
+        if (width == handle.shownWidth || (wanted > handle.shownWidth && width < handle.shownWidth)) {
+            // Nothing better fits, so stop any load that was going on and keep what is shown.
+            handle.loadingWidth = 0;
+            handle.reservedBytes = 0;
+            return;
+        }
+        if (width == handle.loadingWidth) {
+            // That texture is being loaded already.
+            return;
+        }
+        handle.loadingWidth = width;
+
+        String key = handle.imageURL + "@" + width;
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            show(handle, width, entry);
+            return;
+        }
+
+        long reserved = textureBytes(handle.imageURL, width);
+        usedBytes += reserved;
+        handle.reservedBytes = reserved;
+        final int loadWidth = width;
+        loaders.execute(() -> {
+            Texture texture = null;
+            try {
+                texture = load(handle.imageURL, loadWidth);
+            } catch (Exception e) {
+                System.err.println("Could not load the texture '" + handle.imageURL + "': " + e.getMessage());
+            }
+            loaded(handle, loadWidth, reserved, texture);
+        });
+    }
+
+    /**
+     * Helper method that takes in a texture that was loaded in the background, then shows it if it still is the last one
+     *  requested for its handle.
+     */
+    private synchronized void loaded(Handle handle, int width, long reserved, Texture texture) {
+        usedBytes -= reserved;
+        boolean last = handle.loadingWidth == width;
+        if (last) {
+            handle.loadingWidth = 0;
+            handle.reservedBytes = 0;
+        }
+        // Memory was freed or the image size became known, so widths that did not fit before may fit now.
+        clearCaps();
+        if (texture == null) {
+            failed.add(handle.imageURL);
+            return;
+        }
+        // Now that the image has been read, the memory of the texture is known exactly. The image may be narrower than
+        //  the width asked for, so the texture is kept under the width it really has.
+        int loadedWidth = texture.getWidth();
+        String key = handle.imageURL + "@" + loadedWidth;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(texture, textureBytes(handle.imageURL, loadedWidth));
+            entries.put(key, entry);
+            usedBytes += entry.bytes;
+        }
+        if (last) {
+            show(handle, loadedWidth, entry);
+        }
+        while (usedBytes > budgetBytes && evictUnused()) {
+            // Keep dropping until it fits again.
+        }
+    }
+
+    /**
+     * Helper method that lets every handle ask again for the widths that did not fit in the budget before.
+     */
+    private void clearCaps() {
+        for (int i = 0; i < handles.size(); i++) {
+            handles.get(i).cappedWidth = 0;
+        }
+    }
+
+    /**
+     * Helper method that puts the texture of the given entry on the shape of the given handle.
+     */
+    private void show(Handle handle, int width, Entry entry) {
+        if (handle.shown != null) {
+            handle.shown.users--;
+            if (handle.shown.users == 0) {
+                // The old texture can be dropped now, which makes room for the others.
+                clearCaps();
+            }
+        }
+        entry.users++;
+        handle.shown = entry;
+        handle.shownWidth = width;
+        handle.loadingWidth = 0;
+        handle.reservedBytes = 0;
+        handle.shape.setTexture(entry.texture);
+    }
+
+    /**
+     * Helper method that drops the least recently used texture that no body shows anymore.
+     * @return boolean true if a texture was dropped, false if every texture is still in use.
+     */
+    private boolean evictUnused() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.users == 0) {
+                iterator.remove();
+                usedBytes -= entry.bytes;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method that reads the given image at (about) the given width and turns it into a mipmapped texture. Runs in
+     *  the background. The image is first read at a width of at most twice the one asked for, skipping the rest of the
+     *  pixels while decoding, then halved smoothly down to the exact width.
+     */
+    private Texture load(String imageURL, int width) throws Exception {
+        BufferedImage image;
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(imageURL))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("The file '" + imageURL + "' is not an image that can be read!");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                int fullWidth = reader.getWidth(0);
+                int fullHeight = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int skip = Math.max(1, fullWidth / (2 * width));
+                param.setSourceSubsampling(skip, skip, 0, 0);
+                image = reader.read(0, param);
+                boolean opaque = !image.getColorModel().hasAlpha();
+                synchronized (this) {
+                    imageInfo.put(imageURL, new int[] {fullWidth, fullHeight, opaque ? 1 : 0});
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        int[] info;
+        synchronized (this) {
+            info = imageInfo.get(imageURL);
+        }
+        int height = Math.max(1, (int)((long)width * info[1] / info[0]));
+        boolean opaque = info[2] == 1;
+        image = scale(image, Math.min(width, image.getWidth()), Math.min(height, image.getHeight()), opaque);
+
+        // Java 3D wants power of two sizes for its mip levels, so the height is rounded up to one.
+        int potHeight = Integer.highestOneBit(image.getHeight());
+        if (potHeight < image.getHeight()) {
+            potHeight *= 2;
+        }
+        int potWidth = Integer.highestOneBit(image.getWidth());
+        if (potWidth != image.getWidth() || potHeight != image.getHeight()) {
+            image = scale(image, potWidth, potHeight, opaque);
+        }
+
+        TextureLoader loader = new TextureLoader(image, opaque ? "RGB" : "RGBA", TextureLoader.GENERATE_MIPMAP | TextureLoader.Y_UP);
+        Texture texture = loader.getTexture();
+        texture.setMinFilter(Texture.MULTI_LEVEL_LINEAR);
+        texture.setMagFilter(Texture.BASE_LEVEL_LINEAR);
+        texture.setBoundaryModeS(Texture.WRAP);
+        texture.setBoundaryModeT(Texture.WRAP);
+        return texture;
+    }
+
+    /**
+     * Helper method that scales the given image to the given size, halving it smoothly step by step while it is more
+     *  than twice as big, so no pixels are skipped.
+     */
+    private static BufferedImage scale(BufferedImage image, int width, int height, boolean opaque) {
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        while (image.getWidth() != width || image.getHeight() != height || image.getType() != type) {
+            int stepWidth = Math.max(width, image.getWidth() / 2);
+            int stepHeight = Math.max(height, image.getHeight() / 2);
+            BufferedImage step = new BufferedImage(stepWidth, stepHeight, type);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, stepWidth, stepHeight, null);
+            g.dispose();
+            image = step;
+        }
+        return image;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+}